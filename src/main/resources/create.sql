@@ -2,6 +2,7 @@ CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashParams varchar(64),
     PRIMARY KEY (Username)
 );
 
@@ -9,13 +10,16 @@ CREATE TABLE Patients (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashParams varchar(64),
     PRIMARY KEY (Username)
 );
 
+-- Slot numbers the 30 minute slots of the day from 09:00, see scheduler.model.Slot
 CREATE TABLE Availabilities (
     Time date,
+    Slot smallint,
     Username varchar(255) REFERENCES Caregivers,
-    PRIMARY KEY (Time, Username)
+    PRIMARY KEY (Time, Slot, Username)
 );
 
 CREATE TABLE Vaccines (
@@ -30,5 +34,33 @@ CREATE TABLE Appointments (
 	Patient varchar(255) REFERENCES Patients(Username),
 	Vaccine varchar(255) REFERENCES Vaccines(Name),
 	Time date,
+	Slot smallint,
 	PRIMARY KEY (AID)
 );
+
+-- one appointment per patient per day and per caregiver per slot, the included columns make the indexes
+-- cover the double-booking check and show_appointments for both kinds of user
+CREATE UNIQUE INDEX UX_Appointments_Patient_Time ON Appointments (Patient, Time) INCLUDE (Caregiver, Vaccine, Slot);
+CREATE UNIQUE INDEX UX_Appointments_Caregiver_Time ON Appointments (Caregiver, Time, Slot) INCLUDE (Patient, Vaccine);
+
+CREATE SEQUENCE AppointmentIDs AS int
+    START WITH 1
+    INCREMENT BY 1
+    CACHE 50;
+
+-- last write applied from each write-behind log, see scheduler.db.WriteBehindStorage
+CREATE TABLE WriteLog (
+    Name varchar(255),
+    Seq bigint,
+    PRIMARY KEY (Name)
+);
+
+-- patients waiting for a free slot between FromTime and ToTime, booked in ID order as capacity appears
+CREATE TABLE Waitlist (
+    ID int IDENTITY,
+    Patient varchar(255) REFERENCES Patients(Username) UNIQUE,
+    Vaccine varchar(255),
+    FromTime date,
+    ToTime date,
+    PRIMARY KEY (ID)
+);
@@ -0,0 +1,54 @@
+-- Brings a database created from an older create.sql up to date, run the sections that are not applied yet
+
+-- appointment IDs come from a sequence instead of MAX(AID) + 1
+DECLARE @nextAID int = (SELECT ISNULL(MAX(AID), 0) + 1 FROM Appointments);
+DECLARE @createSequence nvarchar(200) = N'CREATE SEQUENCE AppointmentIDs AS int START WITH ' +
+        CAST(@nextAID AS nvarchar(12)) + N' INCREMENT BY 1 CACHE 50';
+EXEC (@createSequence);
+GO
+
+-- hash parameters are stored per record, NULL means the original PBKDF2WithHmacSHA1 settings
+ALTER TABLE Caregivers ADD HashParams varchar(64);
+ALTER TABLE Patients ADD HashParams varchar(64);
+GO
+
+-- indexes for the hot Appointments queries, these fail if a patient or caregiver already has two
+-- appointments on the same day, cancel the extra appointments first
+CREATE UNIQUE INDEX UX_Appointments_Patient_Time ON Appointments (Patient, Time) INCLUDE (Caregiver, Vaccine);
+CREATE UNIQUE INDEX UX_Appointments_Caregiver_Time ON Appointments (Caregiver, Time) INCLUDE (Patient, Vaccine);
+GO
+
+-- availability and appointments are kept per 30 minute slot, what was uploaded before becomes the first slot
+-- of its day so every caregiver keeps offering one appointment per day until they upload more slots
+ALTER TABLE Availabilities ADD Slot smallint NOT NULL DEFAULT 0;
+ALTER TABLE Appointments ADD Slot smallint NOT NULL DEFAULT 0;
+GO
+DECLARE @availabilitiesKey sysname = (SELECT name FROM sys.key_constraints
+                                      WHERE parent_object_id = OBJECT_ID('Availabilities') AND type = 'PK');
+DECLARE @dropKey nvarchar(400) = N'ALTER TABLE Availabilities DROP CONSTRAINT ' + QUOTENAME(@availabilitiesKey);
+EXEC (@dropKey);
+ALTER TABLE Availabilities ADD PRIMARY KEY (Time, Slot, Username);
+DROP INDEX UX_Appointments_Patient_Time ON Appointments;
+DROP INDEX UX_Appointments_Caregiver_Time ON Appointments;
+CREATE UNIQUE INDEX UX_Appointments_Patient_Time ON Appointments (Patient, Time) INCLUDE (Caregiver, Vaccine, Slot);
+CREATE UNIQUE INDEX UX_Appointments_Caregiver_Time ON Appointments (Caregiver, Time, Slot) INCLUDE (Patient, Vaccine);
+GO
+
+-- last write applied from each write-behind log, see scheduler.db.WriteBehindStorage
+CREATE TABLE WriteLog (
+    Name varchar(255),
+    Seq bigint,
+    PRIMARY KEY (Name)
+);
+GO
+
+-- patients waiting for a free slot between FromTime and ToTime, booked in ID order as capacity appears
+CREATE TABLE Waitlist (
+    ID int IDENTITY,
+    Patient varchar(255) REFERENCES Patients(Username) UNIQUE,
+    Vaccine varchar(255),
+    FromTime date,
+    ToTime date,
+    PRIMARY KEY (ID)
+);
+GO
@@ -0,0 +1,184 @@
+package scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+// Runs commands on a pool of threads instead of the thread that reads them. The commands of a session take
+// effect in the order they were read and print their output in that order, but a run of read-only commands
+// (see READ_ONLY) is executed in parallel, and sessions never wait for each other.
+// Set the CommandThreads environment variable to the number of threads to run commands on, to "virtual" for a
+// virtual thread per command (Java 21 and later), or leave it unset for a new thread whenever all are busy.
+public class CommandExecutor {
+
+    // commands that change neither the stored data nor the session, other than where show_more continues
+    private static final Set<String> READ_ONLY = Set.of("search_caregiver_schedule", "find_next_available",
+            "show_appointments", "stats");
+    // read-only commands a session can have queued or running before submit waits for one to finish
+    private static final int MAX_READS_IN_FLIGHT = 64;
+
+    private final ExecutorService threads;
+
+    public CommandExecutor() {
+        this(System.getenv("CommandThreads"));
+    }
+
+    public CommandExecutor(String threads) {
+        this.threads = createThreads(checkThreads(threads));
+    }
+
+    // Starts running the session's commands, prompt is called after every command unless the session ended
+    public Queue open(Session session, Runnable prompt) {
+        return new Queue(session, prompt);
+    }
+
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    // Returns true if the command with the given name is read-only, see Scheduler.getCommandName
+    public static boolean isReadOnly(String command) {
+        return READ_ONLY.contains(command);
+    }
+
+    // Returns the setting if it is a CommandThreads value, otherwise throws IllegalArgumentException
+    public static String checkThreads(String threads) {
+        if (threads == null || threads.equals("cached") || threads.equals("virtual")) {
+            return threads;
+        }
+        try {
+            if (Integer.parseInt(threads) > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("CommandThreads must be a positive whole number, \"cached\" or " +
+                "\"virtual\", got \"" + threads + "\"");
+    }
+
+    private static ExecutorService createThreads(String threads) {
+        ThreadFactory daemons = runnable -> {
+            Thread thread = new Thread(runnable, "scheduler-command");
+            thread.setDaemon(true);
+            return thread;
+        };
+        if (threads == null || threads.equals("cached")) {
+            return Executors.newCachedThreadPool(daemons);
+        }
+        if (threads.equals("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads need Java 21, running commands on a cached thread pool");
+                return Executors.newCachedThreadPool(daemons);
+            }
+        }
+        return Executors.newFixedThreadPool(Integer.parseInt(threads), daemons);
+    }
+
+    // Runs one command of the session. An Error is reported like execute reports a RuntimeException, so the
+    // session's later commands still run.
+    private static boolean run(Session session, String line) {
+        try {
+            return Scheduler.execute(session, line);
+        } catch (Error e) {
+            session.getOut().println("Please try again!");
+            e.printStackTrace();
+            return true;
+        }
+    }
+
+    // The commands of one session, submitted by the one thread that reads them. Each future holds false once
+    // the session has ended, commands submitted after that are not run.
+    public class Queue {
+        private final Session session;
+        private final Runnable prompt;
+        private final CommandLine tokens = new CommandLine();
+        private final Semaphore readsInFlight = new Semaphore(MAX_READS_IN_FLIGHT);
+        // completes when every command submitted so far has run and printed its output
+        private CompletableFuture<Boolean> done = CompletableFuture.completedFuture(true);
+        // completes when the last command that is not read-only has run, read-only commands only wait for it
+        private CompletableFuture<Boolean> lastWrite = done;
+
+        private Queue(Session session, Runnable prompt) {
+            this.session = session;
+            this.prompt = prompt;
+        }
+
+        // Queues the command. A read-only command returns right away, any other command is waited for, so
+        // the caller sees a command that ends the session before it reads the next one.
+        // Returns false once the session should end.
+        public boolean submit(String line) {
+            if (isReadOnly(Scheduler.getCommandName(tokens.parse(line)))) {
+                // a client that sends reads faster than they run waits here instead of queueing without limit
+                readsInFlight.acquireUninterruptibly();
+                submitRead(line);
+                return true;
+            }
+            return submitWrite(line).join();
+        }
+
+        // Waits for every submitted command to finish
+        public void close() {
+            CompletableFuture<Boolean> last;
+            synchronized (this) {
+                last = done;
+            }
+            last.join();
+        }
+
+        private synchronized CompletableFuture<Boolean> submitWrite(String line) {
+            CompletableFuture<Boolean> ran = done.thenApplyAsync(
+                    more -> more && run(session, line), threads);
+            lastWrite = ran;
+            done = ran.thenApply(more -> {
+                if (more) {
+                    prompt.run();
+                }
+                return more;
+            });
+            return done;
+        }
+
+        private synchronized void submitRead(String line) {
+            // runs on a copy of the session so it can print to its own buffer while other reads run
+            CompletableFuture<Read> ran = lastWrite.thenApplyAsync(more -> more ? new Read(session, line) : null,
+                    threads);
+            done = done.thenCombine(ran, (more, read) -> {
+                readsInFlight.release();
+                if (!more || read == null) {
+                    return false;
+                }
+                // the output and the show_more cursor are applied in the order the commands were read
+                session.getOut().write(read.output, 0, read.output.length);
+                if (read.copy.getAppointmentCursor() != read.cursor) {
+                    session.setAppointmentCursor(read.copy.getAppointmentCursor());
+                }
+                prompt.run();
+                return true;
+            });
+        }
+    }
+
+    private static class Read {
+        private final Session copy;
+        private final Session.AppointmentCursor cursor;
+        private final byte[] output;
+
+        private Read(Session session, String line) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            this.copy = session.copy(new PrintStream(buffer, false, StandardCharsets.UTF_8));
+            this.cursor = copy.getAppointmentCursor();
+            run(copy, line);
+            copy.getOut().flush();
+            this.output = buffer.toByteArray();
+        }
+    }
+}
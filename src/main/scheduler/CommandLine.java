@@ -0,0 +1,181 @@
+package scheduler;
+
+import java.sql.Date;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+// One command split into tokens at runs of spaces and tabs. The characters are copied into a buffer that is
+// reused for the next command and the tokens are kept as offsets into it, so parsing a line allocates
+// nothing once the buffer is big enough. A token only becomes a String when a handler asks for one, and
+// numbers, dates and times are parsed straight from the buffer.
+public class CommandLine {
+
+    private char[] chars = new char[128];
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int length = 0;
+
+    // Replaces the tokens with the ones in line
+    public CommandLine parse(CharSequence line) {
+        if (chars.length < line.length()) {
+            chars = new char[Math.max(line.length(), chars.length * 2)];
+        }
+        length = 0;
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean separator = i == line.length() || isSeparator(line.charAt(i));
+            if (!separator) {
+                chars[i] = line.charAt(i);
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                add(start, i);
+                start = -1;
+            }
+        }
+        return this;
+    }
+
+    // Returns a copy that keeps these tokens when this one is parsed again
+    public CommandLine copy() {
+        CommandLine copy = new CommandLine();
+        int end = length == 0 ? 0 : ends[length - 1];
+        copy.chars = Arrays.copyOf(chars, Math.max(end, 1));
+        copy.starts = Arrays.copyOf(starts, Math.max(length, 1));
+        copy.ends = Arrays.copyOf(ends, Math.max(length, 1));
+        copy.length = length;
+        return copy;
+    }
+
+    // The number of tokens, the operation name included
+    public int length() {
+        return length;
+    }
+
+    public String get(int token) {
+        return new String(chars, starts[token], ends[token] - starts[token]);
+    }
+
+    public boolean is(int token, String text) {
+        int start = starts[token];
+        int size = ends[token] - start;
+        if (size != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same hash as String.hashCode of the token
+    public int hash(int token) {
+        int hash = 0;
+        for (int i = starts[token]; i < ends[token]; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    // Parses the token like Integer.parseInt
+    public int getInt(int token) {
+        int start = starts[token];
+        int end = ends[token];
+        boolean negative = chars[start] == '-';
+        if (negative || chars[start] == '+') {
+            start++;
+        }
+        // nine digits always fit, anything longer or odd gets the exact behavior of Integer.parseInt
+        if (start == end || end - start > 9) {
+            return Integer.parseInt(get(token));
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(get(token));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Parses a yyyy-mm-dd token like Date.valueOf, throws IllegalArgumentException if it is not a date
+    public Date getDate(int token) {
+        int start = starts[token];
+        if (ends[token] - start == 10 && chars[start + 4] == '-' && chars[start + 7] == '-') {
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1) {
+                try {
+                    return Date.valueOf(LocalDate.of(year, month, day));
+                } catch (DateTimeException e) {
+                    // Date.valueOf rolls days past the end of the month over, so it decides below
+                }
+            }
+        }
+        // single digit months and days, and anything invalid, get the exact behavior of Date.valueOf
+        return Date.valueOf(get(token));
+    }
+
+    // Parses an HH:MM token like LocalTime.parse, throws DateTimeParseException if it is not a time
+    public LocalTime getTime(int token) {
+        int start = starts[token];
+        if (ends[token] - start == 5 && chars[start + 2] == ':') {
+            int hour = digits(start, 2);
+            int minute = digits(start + 3, 2);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        // seconds, and anything invalid, get the exact behavior of LocalTime.parse
+        return LocalTime.parse(get(token));
+    }
+
+    // Returns every token as a String
+    public String[] toArray() {
+        String[] tokens = new String[length];
+        for (int i = 0; i < length; i++) {
+            tokens[i] = get(i);
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", toArray());
+    }
+
+    // Returns the number in the count digits at start, or -1 if they are not all digits
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void add(int start, int end) {
+        if (length == starts.length) {
+            starts = Arrays.copyOf(starts, length * 2);
+            ends = Arrays.copyOf(ends, length * 2);
+        }
+        starts[length] = start;
+        ends[length] = end;
+        length++;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
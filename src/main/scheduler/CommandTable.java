@@ -0,0 +1,71 @@
+package scheduler;
+
+// Maps command names to handlers with open addressing, looked up straight from a token of a CommandLine so
+// finding the handler doesn't create a String. Filled once at startup, only read after that.
+public class CommandTable<T> {
+
+    private final String[] names;
+    private final Object[] values;
+    private final int mask;
+    private int size = 0;
+
+    public CommandTable(int capacity) {
+        // at most half full, so a probe sequence is short and always ends at an empty slot
+        int slots = Integer.highestOneBit(Math.max(capacity, 1) * 2) * 2;
+        this.names = new String[slots];
+        this.values = new Object[slots];
+        this.mask = slots - 1;
+    }
+
+    public void put(String name, T value) {
+        int slot = spread(name.hashCode()) & mask;
+        while (names[slot] != null && !names[slot].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        if (names[slot] == null) {
+            if ((size + 1) * 2 > names.length) {
+                throw new IllegalStateException("Command table is full");
+            }
+            size++;
+        }
+        names[slot] = name;
+        values[slot] = value;
+    }
+
+    // Returns the slot of the command named by the token, or -1 if there is no such command
+    public int find(CommandLine command, int token) {
+        int slot = spread(command.hash(token)) & mask;
+        while (names[slot] != null) {
+            if (command.is(token, names[slot])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Returns the slot of the command with the given name, or -1 if there is no such command
+    public int find(String name) {
+        int slot = spread(name.hashCode()) & mask;
+        while (names[slot] != null) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue(int slot) {
+        return (T) values[slot];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
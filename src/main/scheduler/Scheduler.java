@@ -1,580 +1,1170 @@
 package scheduler;
 
+import scheduler.cache.AvailabilityCache;
+import scheduler.cache.SessionCache;
+import scheduler.cache.UsernameCache;
+import scheduler.cache.VaccineCache;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Storage;
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
+import scheduler.model.Slot;
 import scheduler.model.Vaccine;
+import scheduler.server.SchedulerServer;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    //To Do: pass in con as a parameter for helper methods, close cm in main
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // number of appointments show_appointments and show_more print at a time
+    private static final int APPOINTMENT_PAGE_SIZE = getPageSize(System.getenv("AppointmentPageSize"), 20);
+
+    // number of days find_next_available searches when it is not given
+    private static final int SEARCH_DAYS = 30;
+
+    // Returns the page size set in the environment, or the default when it is unset or not a positive number
+    private static int getPageSize(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.out.println("AppointmentPageSize must be a positive whole number, got \"" + value + "\", using " +
+                fallback);
+        return fallback;
+    }
+
+    // command name -> handler, looked up from the parsed command line without creating a String
+    private static final CommandTable<Handler> COMMANDS = new CommandTable<>(32);
+    static {
+        COMMANDS.put("create_patient", Scheduler::createPatient);
+        COMMANDS.put("create_caregiver", Scheduler::createCaregiver);
+        COMMANDS.put("login_patient", Scheduler::loginPatient);
+        COMMANDS.put("login_caregiver", Scheduler::loginCaregiver);
+        COMMANDS.put("resume", Scheduler::resume);
+        COMMANDS.put("search_caregiver_schedule", Scheduler::searchCaregiverSchedule);
+        COMMANDS.put("find_next_available", Scheduler::findNextAvailable);
+        COMMANDS.put("reserve", Scheduler::reserve);
+        COMMANDS.put("join_waitlist", Scheduler::joinWaitlist);
+        COMMANDS.put("leave_waitlist", Scheduler::leaveWaitlist);
+        COMMANDS.put("upload_availability", Scheduler::uploadAvailability);
+        COMMANDS.put("upload_availability_range", Scheduler::uploadAvailabilityRange);
+        COMMANDS.put("upload_availability_file", Scheduler::uploadAvailabilityFile);
+        COMMANDS.put("cancel", Scheduler::cancel);
+        COMMANDS.put("add_doses", Scheduler::addDoses);
+        COMMANDS.put("import_doses", Scheduler::importDoses);
+        COMMANDS.put("show_appointments", Scheduler::showAppointments);
+        COMMANDS.put("show_more", Scheduler::showMore);
+        COMMANDS.put("logout", Scheduler::logout);
+        COMMANDS.put("stats", Scheduler::stats);
+        COMMANDS.put("quit", (session, tokens) -> session.getOut().println("Bye!"));
+    }
+    private static final int QUIT = COMMANDS.find("quit");
+
+    // every thread parses its commands into the same buffer
+    private static final ThreadLocal<CommandLine> COMMAND_LINES = ThreadLocal.withInitial(CommandLine::new);
 
     public static void main(String[] args) {
+        // a bad HashIterations or ReplicaLagMs setting stops the program here instead of failing the first
+        // command that needs it
+        try {
+            PasswordHasher.getCurrentParams();
+            ConnectionManager.getReplicaLagMs();
+        } catch (ExceptionInInitializerError e) {
+            System.out.println(e.getCause().getMessage());
+            return;
+        }
+        try {
+            CommandExecutor.checkThreads(System.getenv("CommandThreads"));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        // scheduler.Scheduler --server <port> serves the same commands to many users over TCP
+        if (args.length == 2 && args[0].equals("--server")) {
+            try {
+                new SchedulerServer(Integer.parseInt(args[1])).serve();
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Could not start the server on port " + args[1]);
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        // scheduler.Scheduler --script <file> [<output file>] runs the commands in the file and prints a summary
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--script")) {
+            try {
+                ScriptRunner.run(Paths.get(args[1]), args.length == 3 ? Paths.get(args[2]) : null);
+            } catch (IOException e) {
+                System.out.println("Could not run the script " + args[1]);
+                e.printStackTrace();
+            }
+            ConnectionManager.shutdown();
+            return;
+        }
+
         // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
-
-        // read input from user
+        printGreeting(System.out);
+
+        // read input from user, the commands run on the executor while the next line is read
+        Session session = new Session(System.out);
+        CommandExecutor.Queue commands = new CommandExecutor().open(session, () -> System.out.print("> "));
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
+        System.out.print("> ");
         while (true) {
-            System.out.print("> ");
             String response = "";
             try {
                 response = r.readLine();
             } catch (IOException e) {
                 System.out.println("Please try again!");
-            }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
+                System.out.print("> ");
                 continue;
             }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            // end of input behaves like quit
+            if (response == null || !commands.submit(response)) {
+                commands.close();
+                ConnectionManager.shutdown();
                 return;
+            }
+        }
+    }
+
+    public static void printGreeting(PrintStream out) {
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        out.println("> create_caregiver <username> <password>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        out.println("> login_caregiver <username> <password>");
+        out.println("> resume <session token>");
+        out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
+        out.println("> find_next_available <date> [<vaccine>] [<days>]");
+        out.println("> reserve <date> <vaccine> [<time>]");  // TODO: implement reserve (Part 2)
+        out.println("> join_waitlist <start_date> <end_date> <vaccine>");
+        out.println("> leave_waitlist");
+        out.println("> upload_availability <date> [<start_time> <end_time>]");
+        out.println("> upload_availability_range <start_date> <end_date> [weekdays, e.g. MON,WED,FRI] " +
+                "[<start_time> <end_time>]");
+        out.println("> upload_availability_file <file with one date per line> [<start_time> <end_time>]");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> import_doses <manifest file with lines of vaccine,number>");
+        out.println("> show_appointments [<start_date> [<end_date>]]");  // TODO: implement show_appointments (Part 2)
+        out.println("> show_more");
+        out.println("> logout");  // TODO: implement logout (Part 2)
+        out.println("> stats");
+        out.println("> quit");
+        out.println();
+    }
+
+    // Runs one command line for the session, returns false once the session should end
+    public static boolean execute(Session session, String response) {
+        // split the user input by spaces
+        return execute(session, COMMAND_LINES.get().parse(response));
+    }
+
+    static boolean execute(Session session, CommandLine tokens) {
+        // check if input exists
+        if (tokens.length() == 0) {
+            session.getOut().println("Please try again!");
+            return true;
+        }
+        // determine which operation to perform
+        int command = COMMANDS.find(tokens, 0);
+        // unknown operations share one timer so arbitrary input can't grow the metrics
+        String operation = command < 0 ? "invalid" : COMMANDS.getName(command);
+        run(session, operation, () -> {
+            if (command < 0) {
+                session.getOut().println("Invalid operation name!");
+            } else {
+                COMMANDS.getValue(command).handle(session, tokens);
+            }
+        });
+        return command != QUIT;
+    }
+
+    // Runs a run of add_doses or upload_availability commands as one command, see ScriptRunner
+    static void executeBatch(Session session, List<CommandLine> commands) {
+        String operation = getCommandName(commands.get(0));
+        run(session, operation, () -> {
+            if (operation.equals("add_doses")) {
+                addDoses(session, commands);
             } else {
-                System.out.println("Invalid operation name!");
+                uploadAvailability(session, commands);
+            }
+        });
+    }
+
+    // Runs a command between ConnectionManager.startCommand and endCommand and records it in Metrics.
+    // A RuntimeException is reported to the session instead of ending it.
+    private static void run(Session session, String operation, Runnable command) {
+        boolean readOnly = CommandExecutor.isReadOnly(operation);
+        ConnectionManager.startCommand(readOnly, session.getLastWriteAt());
+        long start = System.nanoTime();
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            Metrics.recordError("command." + operation);
+            session.getOut().println("Please try again!");
+            e.printStackTrace();
+        } finally {
+            Metrics.recordCommand(operation, System.nanoTime() - start);
+            // only a command that wrote to the storage keeps the session's reads on the primary for a while
+            if (ConnectionManager.endCommand()) {
+                session.setLastWriteAt(System.currentTimeMillis());
             }
         }
     }
 
-    private static void createPatient(String[] tokens) {
+    static String getCommandName(CommandLine tokens) {
+        int command = tokens.length() == 0 ? -1 : COMMANDS.find(tokens, 0);
+        return command < 0 ? "invalid" : COMMANDS.getName(command);
+    }
+
+    private static void createPatient(Session session, CommandLine tokens) {
         // create_patient <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.length() != 3) {
+            session.getOut().println("Please try again!");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
         // check 2: check if the username has been taken already
-        if (usernameExists(username, "Patients")) {
-            System.out.println("Username taken, try again!");
+        if (usernameExists(session, username, "Patients")) {
+            session.getOut().println("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
         byte[] hash = Util.generateHash(password, salt);
-        // create the patient
+        // create the patient, the session only logs in as it once it is saved
+        Patient patient = new Patient.PatientBuilder(username, salt, hash, PasswordHasher.getCurrentParams()).build();
         try {
-            currentPatient = new Patient.PatientBuilder(username, salt, hash).build();
             // save to patient information to our database
-            currentPatient.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            patient.saveToDB();
         } catch (SQLException e) {
-            System.out.println("Create failed");
-            e.printStackTrace();
+            createFailed(session, username, false, e);
+            return;
         }
+        UsernameCache.add(username, false);
+        session.setCurrentPatient(patient);
+        session.getOut().println(" *** Account created successfully *** ");
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, CommandLine tokens) {
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.length() != 3) {
+            session.getOut().println("Please try again!");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
         // check 2: check if the username has been taken already
-        if (usernameExists(username, "Caregivers")) {
-            System.out.println("Username taken, try again!");
+        if (usernameExists(session, username, "Caregivers")) {
+            session.getOut().println("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
         byte[] hash = Util.generateHash(password, salt);
-        // create the caregiver
+        // create the caregiver, the session only logs in as it once it is saved
+        Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash,
+                PasswordHasher.getCurrentParams()).build();
         try {
-            currentCaregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
             // save to caregiver information to our database
-            currentCaregiver.saveToDB();
-            System.out.println(" *** Account created successfully *** ");
+            caregiver.saveToDB();
         } catch (SQLException e) {
-            System.out.println("Create failed");
-            e.printStackTrace();
+            createFailed(session, username, true, e);
+            return;
+        }
+        UsernameCache.add(username, true);
+        session.setCurrentCaregiver(caregiver);
+        session.getOut().println(" *** Account created successfully *** ");
+    }
+
+    // The username cache can call a name free that another process took since it was loaded, so a failed save
+    // is reported as a taken username if the name turns out to exist
+    private static void createFailed(Session session, String username, boolean caregiver, SQLException e) {
+        try {
+            if (UsernameCache.existsAfterFailedSave(username, caregiver)) {
+                session.getOut().println("Username taken, try again!");
+                return;
+            }
+        } catch (SQLException lookupFailed) {
+            e.addSuppressed(lookupFailed);
         }
+        session.getOut().println("Create failed");
+        e.printStackTrace();
     }
 
-    private static boolean usernameExists(String username, String userType) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        String selectUsername = "SELECT * FROM " + userType + " WHERE Username = ?";
+    private static boolean usernameExists(Session session, String username, String userType) {
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return UsernameCache.exists(username, userType.equals("Caregivers"));
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.getOut().println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, CommandLine tokens) {
         // login_patient <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in!");
+        if (session.getCurrentCaregiver() != null || session.getCurrentPatient() != null) {
+            session.getOut().println("Already logged-in!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.length() != 3) {
+            session.getOut().println("Please try again!");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
 
         Patient patient = null;
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            session.getOut().println("Error occurred when logging in");
             e.printStackTrace();
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Please try again!");
+            session.getOut().println("Please try again!");
         } else {
-            System.out.println("Patient logged in as: " + username);
-            currentPatient = patient;
+            session.getOut().println("Patient logged in as: " + username);
+            session.setCurrentPatient(patient);
+            session.setToken(SessionCache.issue(patient));
+            session.getOut().println("Session token: " + session.getToken());
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, CommandLine tokens) {
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("Already logged-in!");
+        if (session.getCurrentCaregiver() != null || session.getCurrentPatient() != null) {
+            session.getOut().println("Already logged-in!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.length() != 3) {
+            session.getOut().println("Please try again!");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
 
         Caregiver caregiver = null;
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when logging in");
+            session.getOut().println("Error occurred when logging in");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Please try again!");
+            session.getOut().println("Please try again!");
+        } else {
+            session.getOut().println("Caregiver logged in as: " + username);
+            session.setCurrentCaregiver(caregiver);
+            session.setToken(SessionCache.issue(caregiver));
+            session.getOut().println("Session token: " + session.getToken());
+        }
+    }
+
+    private static void resume(Session session, CommandLine tokens) {
+        // resume <token>
+        // logs in again with the token printed at login, without the password
+        if (session.getCurrentCaregiver() != null || session.getCurrentPatient() != null) {
+            session.getOut().println("Already logged-in!");
+            return;
+        }
+        if (tokens.length() != 2) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        SessionCache.Entry entry = SessionCache.resume(tokens.get(1));
+        if (entry == null) {
+            session.getOut().println("Session expired, please log in again!");
+        } else if (entry.getPatient() != null) {
+            session.setCurrentPatient(entry.getPatient());
+            session.setToken(tokens.get(1));
+            session.getOut().println("Patient logged in as: " + entry.getPatient().getUsername());
         } else {
-            System.out.println("Caregiver logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.setCurrentCaregiver(entry.getCaregiver());
+            session.setToken(tokens.get(1));
+            session.getOut().println("Caregiver logged in as: " + entry.getCaregiver().getUsername());
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static void searchCaregiverSchedule(Session session, CommandLine tokens) {
         // TODO: Part 2
         // search_caregiver_schedule <date>
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("Please login first!");
             return;
         }
         try {
-            ArrayList<String> caregivers = getAvailability(Date.valueOf(tokens[1]));
+            Date date = tokens.getDate(1);
+            Map<String, Integer> caregivers = getAvailability(session, date);
             if (caregivers.size() < 1) {
-                System.out.println("No available caregivers for this date.");
+                session.getOut().println("No available caregivers for this date.");
+                printNextFreeSlot(session, date.toLocalDate().atStartOfDay());
             } else {
-                for (String avail : caregivers) {
-                    System.out.println(avail);
+                // each caregiver with the times it is free, e.g. "alice: 09:00-12:00 14:00-17:00"
+                for (Map.Entry<String, Integer> avail : new TreeMap<>(caregivers).entrySet()) {
+                    session.getOut().println(avail.getKey() + ": " + Slot.format(avail.getValue()));
                 }
             }
-            for (String dose : getVaccines()) {
-                System.out.println(dose);
+            for (String dose : getVaccines(session)) {
+                session.getOut().println(dose);
             }
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            session.getOut().println("Please enter a valid date!");
         }
     }
 
-    private static ArrayList<String> getAvailability(Date time) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        ArrayList<String> caregivers = new ArrayList<>();
-        String getSchedule = "SELECT * FROM Availabilities WHERE Time = ?";
+    private static Map<String, Integer> getAvailability(Session session, Date time) {
         try {
-            PreparedStatement statement = con.prepareStatement(getSchedule);
-            statement.setDate(1, time);
-            ResultSet results = statement.executeQuery();
-            while (results.next()) {
-                caregivers.add(results.getString("Username"));
-            }
+            return AvailabilityCache.get(time);
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return caregivers;
+        return Map.of();
     }
 
-    private static ArrayList<String> getVaccines() {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        ArrayList<String> availDoses = new ArrayList<>();
+    private static void printNextFreeSlot(Session session, LocalDateTime from) {
         try {
-            PreparedStatement statement = con.prepareStatement("SELECT * FROM Vaccines");
-            ResultSet results = statement.executeQuery();
-            while (results.next()) {
-                availDoses.add(results.getString("Name") + ": " +
-                               results.getString("Doses") + " doses available.");
+            LocalDateTime next = Storage.get().nextFreeSlot(from);
+            if (next != null) {
+                session.getOut().println("The next free slot is on " + next.toLocalDate() + " at " +
+                        next.toLocalTime() + ".");
             }
-            return availDoses;
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return null;
     }
 
-    private static int getVaccines(String name) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private static ArrayList<String> getVaccines(Session session) {
         ArrayList<String> availDoses = new ArrayList<>();
-        String getVaccine = "SELECT * FROM Vaccines WHERE name = ?";
         try {
-            PreparedStatement statement = con.prepareStatement(getVaccine);
-            statement.setString(1, name);
-            ResultSet results = statement.executeQuery();
-            results.next();
-            return results.getInt("Doses");
+            VaccineCache.Snapshot vaccines = VaccineCache.get();
+            for (int i = 0; i < vaccines.size(); i++) {
+                availDoses.add(vaccines.getName(i) + ": " + vaccines.getDoses(i) + " doses available.");
+            }
+            return availDoses;
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return -1;
+        return availDoses;
     }
 
-    private static void reserve(String[] tokens) {
-        //reserve <date> <vaccine>
-        //patient login check
-        if (currentPatient == null) {
-            System.out.println("Please login as a patient first!");
+    private static void findNextAvailable(Session session, CommandLine tokens) {
+        // find_next_available <date> [<vaccine>] [<days>]
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("Please login first!");
             return;
         }
-        String vaxName = tokens[2];
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        if (tokens.length() < 2 || tokens.length() > 4) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        LocalDate from;
         try {
-            Date date = Date.valueOf(tokens[1]);
-            ArrayList<String> caregivers = getAvailability(date);
-            if (getVaccines(vaxName) < 1) {
-                System.out.println("No more available " + vaxName + " vaccines. Try again with a different vaccine.");
+            from = tokens.getDate(1).toLocalDate();
+        } catch (IllegalArgumentException e) {
+            session.getOut().println("Please enter a valid date!");
+            return;
+        }
+        // the number of days to search is the numeric argument, the vaccine is the other one
+        String vaccine = null;
+        int days = SEARCH_DAYS;
+        for (int i = 2; i < tokens.length(); i++) {
+            String argument = tokens.get(i);
+            if (argument.chars().allMatch(Character::isDigit)) {
+                days = Integer.parseInt(argument);
+            } else {
+                vaccine = argument;
+            }
+        }
+        LocalDate until = from.plusDays(days);
+        try {
+            // doses are not tied to a date, so they are checked once instead of for every date
+            VaccineCache.Snapshot vaccines = VaccineCache.get();
+            if (vaccine != null && vaccines.getDoses(vaccine) < 1) {
+                session.getOut().println("No more available " + vaccine +
+                        " vaccines. Try again with a different vaccine.");
                 return;
-            } if (caregivers.size() < 1) {
-                System.out.println("No available caregivers for that date. Please try another date.");
+            }
+            if (vaccine == null && !hasDoses(vaccines)) {
+                session.getOut().println("No vaccine doses available.");
                 return;
             }
-            Random rand = new Random();
-            String doubleBooked = "SELECT COUNT(*) FROM Appointments WHERE Appointments.Patient = ? " +
-                    "                                                AND Appointments.Time = ?";
-            String makeReservation = "INSERT INTO Appointments VALUES (? , ? , ? , ? , ?)";
-            String deleteReservation = "DELETE FROM Availabilities WHERE Time = ? AND Username = ?";
-            //checks to see if the user is double-booked
-            PreparedStatement statement = con.prepareStatement(doubleBooked);
-            statement.setString(1, currentPatient.getUsername());
-            statement.setDate(2, date);
-            ResultSet results = statement.executeQuery();
-            results.next();
-            if (results.getInt(1) > 0) {
-                System.out.println("You already have a reservation booked on this date.");
+            LocalDateTime next = Storage.get().nextFreeSlot(from.atStartOfDay());
+            // a patient can only book one appointment per day, so days it already has one are skipped
+            while (next != null && next.toLocalDate().isBefore(until) && session.getCurrentPatient() != null
+                    && hasAppointmentOn(session.getCurrentPatient().getUsername(), next.toLocalDate())) {
+                next = Storage.get().nextFreeSlot(next.toLocalDate().plusDays(1).atStartOfDay());
+            }
+            if (next == null || !next.toLocalDate().isBefore(until)) {
+                session.getOut().println("No available caregivers from " + from + " to " + until.minusDays(1) + ".");
+            } else {
+                session.getOut().println("The earliest available date is " + next.toLocalDate() +
+                        ", the first free slot is at " + next.toLocalTime() + ".");
+            }
+        } catch (SQLException e) {
+            session.getOut().println("System Error. Please try another time");
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean hasDoses(VaccineCache.Snapshot vaccines) {
+        for (int i = 0; i < vaccines.size(); i++) {
+            if (vaccines.getDoses(i) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasAppointmentOn(String patient, LocalDate day) throws SQLException {
+        Date date = Date.valueOf(day);
+        return !Storage.get().getAppointments(patient, false, date, date, null, 1).isEmpty();
+    }
+
+    private static void reserve(Session session, CommandLine tokens) {
+        //reserve <date> <vaccine> [<time>]
+        //patient login check
+        if (session.getCurrentPatient() == null) {
+            session.getOut().println("Please login as a patient first!");
+            return;
+        }
+        if (tokens.length() != 3 && tokens.length() != 4) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        String vaxName = tokens.get(2);
+        // without a time the earliest free slot of the day is booked
+        int slot = -1;
+        if (tokens.length() == 4) {
+            try {
+                slot = Slot.of(tokens.getTime(3));
+            } catch (DateTimeParseException e) {
+                slot = -1;
+            }
+            if (slot < 0) {
+                printInvalidTimes(session);
                 return;
             }
-            //makes reservation
-            statement = con.prepareStatement(makeReservation);
-            String appointment = "Appointment Created! Your Appointment ID is ";
-            int newId = makeNewAID();
-            appointment += newId;
-            statement.setInt(1, newId);
-            String caregiver = caregivers.get(rand.nextInt(caregivers.size()));
-            appointment += " with " + caregiver + ".";
-            statement.setString(2, caregiver);
-            statement.setString(3, currentPatient.getUsername());
-            statement.setString(4, vaxName);
-            statement.setDate(5, date);
-            statement.executeUpdate();
-            System.out.println(appointment);
-            //updates availability
-            statement = con.prepareStatement(deleteReservation);
-            statement.setDate(1, date);
-            statement.setString(2, caregiver);
-            statement.executeUpdate();
-            //deincrements vaccine count
-            Vaccine vax = new Vaccine.VaccineGetter(vaxName).get();
-            vax.decreaseAvailableDoses(1);
+        }
+        try {
+            Date date = tokens.getDate(1);
+            //checks availability, books the caregiver and deincrements the vaccine count in one transaction
+            Appointment appointment = new Appointment.AppointmentBuilder(session.getCurrentPatient().getUsername(),
+                    vaxName, date, slot).reserve();
+            switch (appointment.getStatus()) {
+                case ALREADY_BOOKED:
+                    session.getOut().println("You already have a reservation booked on this date.");
+                    break;
+                case NO_DOSES:
+                    session.getOut().println("No more available " + vaxName + " vaccines. Try again with a different vaccine.");
+                    printWaitlistHint(session);
+                    break;
+                case NO_CAREGIVER:
+                    if (slot < 0) {
+                        session.getOut().println("No available caregivers for that date. Please try another date.");
+                    } else {
+                        session.getOut().println("No available caregivers at that time. Please try another time.");
+                    }
+                    printWaitlistHint(session);
+                    break;
+                default:
+                    AvailabilityCache.invalidate(date);
+                    VaccineCache.invalidate();
+                    session.getOut().println("Appointment Created! Your Appointment ID is " + appointment.getAid() +
+                            " with " + appointment.getCaregiver() + " at " + appointment.getStartTime() + ".");
+            }
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
-        } finally {
-            cm.closeConnection();
+            session.getOut().println("Please enter a valid date!");
+        }
+    }
+
+    private static void printWaitlistHint(Session session) {
+        session.getOut().println("Enter join_waitlist <start_date> <end_date> <vaccine> to be booked as soon as " +
+                "a slot frees up.");
+    }
+
+    private static void joinWaitlist(Session session, CommandLine tokens) {
+        // join_waitlist <start_date> <end_date> <vaccine>
+        if (session.getCurrentPatient() == null) {
+            session.getOut().println("Please login as a patient first!");
+            return;
+        }
+        if (tokens.length() != 4) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        Date from;
+        Date to;
+        try {
+            from = tokens.getDate(1);
+            to = tokens.getDate(2);
+        } catch (IllegalArgumentException e) {
+            session.getOut().println("Please enter a valid date!");
+            return;
+        }
+        if (to.before(from)) {
+            session.getOut().println("The end date must not be before the start date!");
+            return;
+        }
+        try {
+            int position = Storage.get().joinWaitlist(session.getCurrentPatient().getUsername(), tokens.get(3), from, to);
+            session.getOut().println("You are number " + position + " on the waitlist for " + tokens.get(3) +
+                    " between " + from + " and " + to + ".");
+            // there may be capacity already, the patient doesn't have to wait for the next change then
+            assignWaitlist(session);
+        } catch (SQLException e) {
+            session.getOut().println("System Error. Please try another time");
+            e.printStackTrace();
         }
     }
 
-    private static int makeNewAID(){
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private static void leaveWaitlist(Session session, CommandLine tokens) {
+        // leave_waitlist
+        if (session.getCurrentPatient() == null) {
+            session.getOut().println("Please login as a patient first!");
+            return;
+        }
         try {
-            PreparedStatement statement = con.prepareStatement("SELECT MAX(AID) FROM Appointments");
-            ResultSet results = statement.executeQuery();
-            results.next();
-            return results.getInt(1) + 1;
+            if (Storage.get().leaveWaitlist(session.getCurrentPatient().getUsername())) {
+                session.getOut().println("You left the waitlist.");
+            } else {
+                session.getOut().println("You are not on the waitlist.");
+            }
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return -1;
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
+    // Offers capacity that was just freed to the waitlisted patients. The command that freed it already
+    // succeeded, so a failure here is only reported, the next change tries again.
+    private static void assignWaitlist(Session session) {
+        try {
+            List<Appointment> booked = Storage.get().assignWaitlist();
+            if (booked.isEmpty()) {
+                return;
+            }
+            for (Appointment appointment : booked) {
+                AvailabilityCache.invalidate(appointment.getTime());
+            }
+            VaccineCache.invalidate();
+            session.getOut().println(booked.size() + " waitlisted patients were booked.");
+        } catch (SQLException e) {
+            session.getOut().println("Could not book the waitlisted patients, they stay on the waitlist");
+            e.printStackTrace();
+        }
+    }
+
+    private static void uploadAvailability(Session session, CommandLine tokens) {
+        // upload_availability <date> [<start_time> <end_time>]
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
+            return;
+        }
+        // check 2: the length for tokens need to be 2, or 4 with the times (with the operation name)
+        if (tokens.length() != 2 && tokens.length() != 4) {
+            session.getOut().println("Please try again!");
             return;
         }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+        String date = tokens.get(1);
+        int slots = parseSlots(session, tokens, 2);
+        if (slots == 0) {
             return;
         }
-        String date = tokens[1];
         try {
             Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
+            if (session.getCurrentCaregiver().uploadAvailability(d, slots)) {
+                session.getOut().println("Availability uploaded!");
+                assignWaitlist(session);
+            } else {
+                session.getOut().println("Availability already uploaded for this date.");
+            }
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            session.getOut().println("Please enter a valid date!");
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.getOut().println("Error occurred when uploading availability");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
-        // TODO: Extra credit
-        //cancel <appointment_id>
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("You must login first!");
-            return;
-        }
-        int AID = Integer.parseInt(tokens[1]);
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        String reservationInfo = "SELECT * FROM Appointments WHERE AID = ?";
-        String deleteReservation = "DELETE FROM Appointments WHERE AID = ?";
-        try {
-            //stores appointment info
-            PreparedStatement statement = con.prepareStatement(reservationInfo);
-            statement.setInt(1, AID);
-            ResultSet results = statement.executeQuery();
-            results.next();
-            Date date = results.getDate("Time");
-            String caregiver = results.getString("Caregiver");
-            String vaxName = results.getString("Vaccine");
-            //removes appointment
-            statement = con.prepareStatement(deleteReservation);
-            statement.setInt(1, AID);
-            statement.executeUpdate();
-            //re-updates availability
-            updateAvailability(date, caregiver);
-            System.out.println("Appointment " + AID + " was successfully canceled");
-            //increments available vaccine doses
-            Vaccine vax = new Vaccine.VaccineGetter(vaxName).get();
-            vax.increaseAvailableDoses(1);
+    // Uploads the availability of a run of upload_availability commands at once, one upload for each set of
+    // times, see ScriptRunner
+    private static void uploadAvailability(Session session, List<CommandLine> commands) {
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
+            return;
+        }
+        Map<Integer, Set<Date>> datesBySlots = new LinkedHashMap<>();
+        for (CommandLine tokens : commands) {
+            if (tokens.length() != 2 && tokens.length() != 4) {
+                session.getOut().println("Please try again!");
+                continue;
+            }
+            int slots = parseSlots(session, tokens, 2);
+            if (slots == 0) {
+                continue;
+            }
+            try {
+                datesBySlots.computeIfAbsent(slots, s -> new LinkedHashSet<>()).add(tokens.getDate(1));
+            } catch (IllegalArgumentException e) {
+                session.getOut().println("Please enter a valid date!");
+            }
+        }
+        for (Map.Entry<Integer, Set<Date>> upload : datesBySlots.entrySet()) {
+            uploadAvailabilities(session, new ArrayList<>(upload.getValue()), upload.getKey());
+        }
+    }
+
+    private static void uploadAvailabilityRange(Session session, CommandLine tokens) {
+        // upload_availability_range <start_date> <end_date> [weekdays] [<start_time> <end_time>]
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.length() < 3 || tokens.length() > 6) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        boolean hasWeekdays = tokens.length() == 4 || tokens.length() == 6;
+        int slots = parseSlots(session, tokens, hasWeekdays ? 4 : 3);
+        if (slots == 0) {
+            return;
+        }
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = tokens.getDate(1).toLocalDate();
+            end = tokens.getDate(2).toLocalDate();
+        } catch (IllegalArgumentException e) {
+            session.getOut().println("Please enter a valid date!");
+            return;
+        }
+        // weekdays are given as comma separated prefixes of the day names, e.g. MON,WED,FRI
+        EnumSet<DayOfWeek> weekdays = EnumSet.allOf(DayOfWeek.class);
+        if (hasWeekdays) {
+            weekdays.clear();
+            for (String day : tokens.get(3).split(",")) {
+                DayOfWeek match = null;
+                for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                    if (day.length() >= 2 && dayOfWeek.name().startsWith(day.toUpperCase())) {
+                        match = dayOfWeek;
+                    }
+                }
+                if (match == null) {
+                    session.getOut().println("Please enter valid weekdays!");
+                    return;
+                }
+                weekdays.add(match);
+            }
+        }
+        ArrayList<Date> dates = new ArrayList<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            if (weekdays.contains(day.getDayOfWeek())) {
+                dates.add(Date.valueOf(day));
+            }
+        }
+        uploadAvailabilities(session, dates, slots);
+    }
+
+    private static void uploadAvailabilityFile(Session session, CommandLine tokens) {
+        // upload_availability_file <file> [<start_time> <end_time>]
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.length() != 2 && tokens.length() != 4) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        int slots = parseSlots(session, tokens, 2);
+        if (slots == 0) {
+            return;
+        }
+        // one date per line, or comma separated dates on a line
+        ArrayList<Date> dates = new ArrayList<>();
+        try (BufferedReader file = Files.newBufferedReader(Paths.get(tokens.get(1)))) {
+            String line;
+            while ((line = file.readLine()) != null) {
+                for (String date : line.split(",")) {
+                    if (!date.isBlank()) {
+                        dates.add(Date.valueOf(date.strip()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            session.getOut().println("Could not read " + tokens.get(1));
+            return;
+        } catch (IllegalArgumentException e) {
+            session.getOut().println("Please enter a valid date!");
+            return;
+        }
+        uploadAvailabilities(session, dates, slots);
+    }
+
+    // Reads the optional <start_time> <end_time> at token first of an upload command. Returns the slots
+    // between the times, every slot of the day when they are left out, or 0 if they are not valid.
+    private static int parseSlots(Session session, CommandLine tokens, int first) {
+        if (tokens.length() <= first) {
+            return Slot.ALL;
+        }
+        int slots = 0;
+        try {
+            slots = Slot.between(tokens.getTime(first), tokens.getTime(first + 1));
+        } catch (DateTimeParseException e) {
+            slots = 0;
+        }
+        if (slots == 0) {
+            printInvalidTimes(session);
+        }
+        return slots;
+    }
+
+    private static void printInvalidTimes(Session session) {
+        session.getOut().println("Please enter valid times! Slots start every " + Slot.LENGTH_MINUTES +
+                " minutes from " + Slot.DAY_START + " to " + Slot.start(Slot.PER_DAY - 1) + ".");
+    }
+
+    private static void uploadAvailabilities(Session session, List<Date> dates, int slots) {
+        try {
+            int added = session.getCurrentCaregiver().uploadAvailability(dates, slots);
+            int requested = dates.size() * Integer.bitCount(slots);
+            if (added < 0) {
+                // queued, it is not known yet how many of the slots were uploaded before
+                session.getOut().println("Availability uploaded for " + requested + " slots!");
+            } else {
+                session.getOut().println("Availability uploaded for " + added + " slots! (" + (requested - added) +
+                        " already uploaded)");
+            }
+            if (added != 0) {
+                assignWaitlist(session);
+            }
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("Error occurred when uploading availability");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    //called from cancel method
-    private static void updateAvailability(Date d, String caregiver) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
+    private static void cancel(Session session, CommandLine tokens) {
+        // TODO: Extra credit
+        //cancel <appointment_id>
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("You must login first!");
+            return;
+        }
+        if (tokens.length() != 2) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        boolean caregiver = session.getCurrentCaregiver() != null;
+        String name = caregiver ? session.getCurrentCaregiver().getUsername() :
+                session.getCurrentPatient().getUsername();
         try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, caregiver);
-            statement.executeUpdate();
+            int AID = tokens.getInt(1);
+            //removes the appointment and gives back the caregiver's availability and the dose, only the patient
+            //and the caregiver of the appointment can cancel it
+            Appointment canceled = Storage.get().cancel(AID, name, caregiver);
+            if (canceled == null) {
+                session.getOut().println("Appointment " + AID + " does not exist");
+                return;
+            }
+            AvailabilityCache.invalidate(canceled.getTime());
+            VaccineCache.invalidate();
+            session.getOut().println("Appointment " + AID + " was successfully canceled");
+            assignWaitlist(session);
+        } catch (NumberFormatException e) {
+            session.getOut().println("Please enter a valid appointment ID!");
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("System Error. Please try another time");
             e.printStackTrace();
         }
     }
 
-    private static void addDoses(String[] tokens) {
+    private static void addDoses(Session session, CommandLine tokens) {
         // add_doses <vaccine> <number>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.length() != 3) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        String vaccineName = tokens.get(1);
+        int doses = parseDoses(session, tokens, 2);
+        if (doses <= 0) {
             return;
         }
-        String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
+        // creates the vaccine if it is not in the Vaccines table yet, otherwise adds to its doses
         try {
-            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            Vaccine.addDoses(Map.of(vaccineName, doses));
+            session.getOut().println("Doses updated!");
+            assignWaitlist(session);
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            session.getOut().println("Error occurred when adding doses");
             e.printStackTrace();
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
-                vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
-                vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+    }
+
+    // Adds the doses of a run of add_doses commands at once, see ScriptRunner
+    private static void addDoses(Session session, List<CommandLine> commands) {
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
+            return;
+        }
+        LinkedHashMap<String, Integer> doses = new LinkedHashMap<>();
+        for (CommandLine tokens : commands) {
+            if (tokens.length() != 3) {
+                session.getOut().println("Please try again!");
+                continue;
             }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
-            try {
-                vaccine.increaseAvailableDoses(doses);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+            int lot = parseDoses(session, tokens, 2);
+            if (lot > 0 && !addLot(doses, tokens.get(1), lot)) {
+                session.getOut().println("Too many doses of " + tokens.get(1) + ", nothing was added");
+                return;
             }
         }
-        System.out.println("Doses updated!");
+        if (doses.isEmpty()) {
+            return;
+        }
+        try {
+            Vaccine.addDoses(doses);
+            session.getOut().println("Doses updated for " + doses.size() + " vaccines!");
+            assignWaitlist(session);
+        } catch (SQLException e) {
+            session.getOut().println("Error occurred when adding doses");
+            e.printStackTrace();
+        }
+    }
+
+    // Returns the number of doses, or 0 after printing why it is not a positive number
+    private static int parseDoses(Session session, CommandLine tokens, int token) {
+        int doses;
+        try {
+            doses = tokens.getInt(token);
+        } catch (NumberFormatException e) {
+            session.getOut().println("Please try again!");
+            return 0;
+        }
+        if (doses <= 0) {
+            session.getOut().println("Please enter a positive number of doses!");
+            return 0;
+        }
+        return doses;
+    }
+
+    // Adds a lot to the doses summed up for its vaccine, returns false if the sum would not fit in an int
+    private static boolean addLot(Map<String, Integer> doses, String vaccine, int lot) {
+        try {
+            doses.merge(vaccine, lot, Math::addExact);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
     }
 
-    private static void showAppointments(String[] tokens) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("You must login first!");
+    private static void importDoses(Session session, CommandLine tokens) {
+        // import_doses <file>
+        if (session.getCurrentCaregiver() == null) {
+            session.getOut().println("Please login as a caregiver first!");
             return;
         }
-        String name;
-        String type;
-        String altName;
-        String altType;
-        if (currentCaregiver != null) {
-            name = currentCaregiver.getUsername();
-            type = "Caregiver";
-            altName = "    Patient name: ";
-            altType = "Patient";
-        } else {
-            name = currentPatient.getUsername();
-            type = "Patient";
-            altName = "    Caregiver name: ";
-            altType = "Caregiver";
-        }
-        String findAppointments = "SELECT * FROM Appointments WHERE Appointments." + type + " = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(findAppointments);
-            statement.setString(1, name);
-            System.out.println("Scheduled appointments for " + name + ":");
-            ResultSet results = statement.executeQuery();
-            while (results.next()) {
-                String appointmentInfo;
-                System.out.println("Appointment ID: " + results.getInt("AID"));
-                System.out.println("    Vaccine Name: " + results.getString("Vaccine"));
-                System.out.println("    Date: " + results.getDate("Time"));
-                System.out.println(altName + results.getString(altType));
+        if (tokens.length() != 2) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        // each line of the manifest is <vaccine>,<doses>[,other columns], lots of the same vaccine are summed up
+        LinkedHashMap<String, Integer> doses = new LinkedHashMap<>();
+        int lineNumber = 0;
+        try (BufferedReader file = Files.newBufferedReader(Paths.get(tokens.get(1)))) {
+            String line;
+            while ((line = file.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] columns = line.split(",");
+                if (columns[0].isBlank()) {
+                    session.getOut().println("Missing vaccine name on line " + lineNumber + ", nothing was imported");
+                    return;
+                }
+                int lot = columns.length < 2 ? 0 : Integer.parseInt(columns[1].strip());
+                if (lot <= 0) {
+                    session.getOut().println("Invalid dose count on line " + lineNumber + ", nothing was imported");
+                    return;
+                }
+                if (!addLot(doses, columns[0].strip(), lot)) {
+                    session.getOut().println("Too many doses of " + columns[0].strip() + " on line " + lineNumber +
+                            ", nothing was imported");
+                    return;
+                }
             }
+        } catch (IOException e) {
+            session.getOut().println("Could not read " + tokens.get(1));
+            return;
+        } catch (NumberFormatException e) {
+            session.getOut().println("Invalid dose count on line " + lineNumber + ", nothing was imported");
+            return;
+        }
+        try {
+            Vaccine.addDoses(doses);
+            session.getOut().println("Doses updated for " + doses.size() + " vaccines!");
+            assignWaitlist(session);
         } catch (SQLException e) {
-            System.out.println("System Error. Please try another time");
+            session.getOut().println("Error occurred when adding doses");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
     }
 
-    private static void logout(String[] tokens) {
-        if (currentPatient != null || currentCaregiver != null) {
-            currentPatient = null;
-            currentCaregiver = null;
-            System.out.println("Logout successful.");
+    private static void showAppointments(Session session, CommandLine tokens) {
+        // show_appointments [<start_date> [<end_date>]]
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("You must login first!");
+            return;
+        }
+        if (tokens.length() > 3) {
+            session.getOut().println("Please try again!");
+            return;
+        }
+        Date from;
+        Date to;
+        try {
+            from = tokens.length() > 1 ? tokens.getDate(1) : null;
+            to = tokens.length() > 2 ? tokens.getDate(2) : null;
+        } catch (IllegalArgumentException e) {
+            session.getOut().println("Please enter a valid date!");
+            return;
+        }
+        String name = session.getCurrentCaregiver() != null ? session.getCurrentCaregiver().getUsername() :
+                session.getCurrentPatient().getUsername();
+        session.setAppointmentCursor(null);
+        printAppointmentPage(session, "Scheduled appointments for " + name + ":\n", from, to, null);
+    }
+
+    private static void showMore(Session session, CommandLine tokens) {
+        // show_more
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("You must login first!");
+            return;
+        }
+        Session.AppointmentCursor cursor = session.getAppointmentCursor();
+        if (cursor == null) {
+            session.getOut().println("No more appointments to show.");
+            return;
+        }
+        printAppointmentPage(session, "", cursor.getFrom(), cursor.getTo(), cursor.getLast());
+    }
+
+    // Prints one page of appointments starting after the given one, and remembers where show_more continues
+    private static void printAppointmentPage(Session session, String header, Date from, Date to, Appointment after) {
+        boolean caregiver = session.getCurrentCaregiver() != null;
+        String name = caregiver ? session.getCurrentCaregiver().getUsername() :
+                session.getCurrentPatient().getUsername();
+        String altName = caregiver ? "    Patient name: " : "    Caregiver name: ";
+        try {
+            List<Appointment> appointments = Storage.get().getAppointments(name, caregiver, from, to, after,
+                    APPOINTMENT_PAGE_SIZE);
+            // the page is written in one go rather than line by line
+            StringBuilder page = new StringBuilder(header);
+            for (Appointment appointment : appointments) {
+                page.append("Appointment ID: ").append(appointment.getAid()).append('\n');
+                page.append("    Vaccine Name: ").append(appointment.getVaccineName()).append('\n');
+                page.append("    Date: ").append(appointment.getTime()).append('\n');
+                page.append("    Time: ").append(appointment.getStartTime()).append('\n');
+                page.append(altName).append(caregiver ? appointment.getPatient() : appointment.getCaregiver())
+                        .append('\n');
+            }
+            if (appointments.size() == APPOINTMENT_PAGE_SIZE) {
+                session.setAppointmentCursor(new Session.AppointmentCursor(from, to,
+                        appointments.get(appointments.size() - 1)));
+                page.append("Enter show_more to see more appointments.\n");
+            } else {
+                session.setAppointmentCursor(null);
+            }
+            session.getOut().print(page);
+        } catch (SQLException e) {
+            session.getOut().println("System Error. Please try another time");
+            e.printStackTrace();
+        }
+    }
+
+    private static void stats(Session session, CommandLine tokens) {
+        // the report shows how busy the system is, so it is only for users who are logged in
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            session.getOut().println("You must login first!");
+            return;
+        }
+        session.getOut().println(Metrics.report());
+    }
+
+    private static void logout(Session session, CommandLine tokens) {
+        if (session.getCurrentPatient() != null || session.getCurrentCaregiver() != null) {
+            session.setCurrentPatient(null);
+            session.setCurrentCaregiver(null);
+            session.setAppointmentCursor(null);
+            if (session.getToken() != null) {
+                SessionCache.revoke(session.getToken());
+                session.setToken(null);
+            }
+            session.getOut().println("Logout successful.");
         } else {
-            System.out.println("Please log in first.");
+            session.getOut().println("Please log in first.");
         }
     }
+
+    private interface Handler {
+        void handle(Session session, CommandLine tokens);
+    }
 }
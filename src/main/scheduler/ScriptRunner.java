@@ -0,0 +1,128 @@
+package scheduler;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Runs a file of commands, one per line, as one session: java scheduler.Scheduler --script <file> [<output file>].
+// Nothing is printed per command, the output goes to the output file if there is one, and a summary with the
+// timing of each command is printed at the end. Runs of add_doses and of upload_availability are applied as
+// one storage operation each instead of one per line. Empty lines and lines starting with # are skipped.
+public class ScriptRunner {
+
+    // commands whose consecutive lines are collected and run together
+    private static final Set<String> BATCHED = Set.of("add_doses", "upload_availability");
+    // lines collected before a batch is run even if the run goes on
+    private static final int MAX_BATCH = 10_000;
+
+    private final Session session;
+    private final CommandLine tokens = new CommandLine();
+    private final Map<String, Timing> timings = new TreeMap<>();
+    private final List<CommandLine> batch = new ArrayList<>();
+    private String batchOperation = null;
+    private long commands = 0;
+
+    private ScriptRunner(Session session) {
+        this.session = session;
+    }
+
+    public static void run(Path script, Path output) throws IOException {
+        OutputStream out = output == null ? OutputStream.nullOutputStream() :
+                new BufferedOutputStream(Files.newOutputStream(output));
+        try (BufferedReader lines = Files.newBufferedReader(script, StandardCharsets.UTF_8);
+             PrintStream printed = new PrintStream(out, false, StandardCharsets.UTF_8)) {
+            ScriptRunner runner = new ScriptRunner(new Session(printed));
+            long start = System.nanoTime();
+            runner.runLines(lines);
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+            System.out.println(runner.summary(script, elapsed));
+        }
+    }
+
+    private void runLines(BufferedReader lines) throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (isComment(line) || tokens.parse(line).length() == 0) {
+                continue;
+            }
+            String operation = Scheduler.getCommandName(tokens);
+            if (!operation.equals(batchOperation) || batch.size() == MAX_BATCH) {
+                runBatch();
+            }
+            if (BATCHED.contains(operation)) {
+                batchOperation = operation;
+                batch.add(tokens.copy());
+                continue;
+            }
+            long start = System.nanoTime();
+            boolean more = Scheduler.execute(session, tokens);
+            record(operation, 1, System.nanoTime() - start);
+            if (!more) {
+                return;
+            }
+        }
+        runBatch();
+    }
+
+    private void runBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Scheduler.executeBatch(session, batch);
+        record(batchOperation, batch.size(), System.nanoTime() - start);
+        batch.clear();
+        batchOperation = null;
+    }
+
+    private void record(String operation, int count, long nanos) {
+        Timing timing = timings.computeIfAbsent(operation, name -> new Timing());
+        timing.count += count;
+        timing.runs++;
+        timing.nanos += nanos;
+        timing.maxNanos = Math.max(timing.maxNanos, nanos);
+        commands += count;
+    }
+
+    private String summary(Path script, long elapsed) {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Ran %d commands from %s in %d ms (%.1f commands/sec)%n", commands, script,
+                elapsed / 1_000_000, commands * 1e9 / elapsed));
+        for (Map.Entry<String, Timing> entry : timings.entrySet()) {
+            Timing timing = entry.getValue();
+            summary.append(String.format("    %-28s count=%d runs=%d total=%dms mean=%dus max=%dus%n",
+                    entry.getKey(), timing.count, timing.runs, timing.nanos / 1_000_000,
+                    timing.nanos / timing.count / 1000, timing.maxNanos / 1000));
+        }
+        return summary.toString();
+    }
+
+    // Returns true if the first character that is not a space or tab is #
+    private static boolean isComment(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != ' ' && c != '\t') {
+                return c == '#';
+            }
+        }
+        return false;
+    }
+
+    // runs counts the batches a batched command was run in, the other commands run once per line
+    private static class Timing {
+        private long count;
+        private long runs;
+        private long nanos;
+        private long maxNanos;
+    }
+}
@@ -0,0 +1,107 @@
+package scheduler;
+
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintStream;
+import java.sql.Date;
+
+// State of one connected user: who is logged-in and where command output goes
+public class Session {
+
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time in a session
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+    // where show_more continues the last show_appointments listing, null when there is nothing more to show
+    private AppointmentCursor appointmentCursor = null;
+    // token the logged-in user can resume the session with, see SessionCache
+    private String token = null;
+    // when the last command that wrote to the storage finished, reads go to the primary for a while after it
+    private long lastWriteAt = 0;
+    private final PrintStream out;
+
+    public Session(PrintStream out) {
+        this.out = out;
+    }
+
+    // Returns a copy of the session that prints to out instead, changes to the copy don't affect this session
+    public Session copy(PrintStream out) {
+        Session copy = new Session(out);
+        copy.currentCaregiver = currentCaregiver;
+        copy.currentPatient = currentPatient;
+        copy.appointmentCursor = appointmentCursor;
+        copy.token = token;
+        copy.lastWriteAt = lastWriteAt;
+        return copy;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public void setCurrentCaregiver(Caregiver currentCaregiver) {
+        this.currentCaregiver = currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public void setCurrentPatient(Patient currentPatient) {
+        this.currentPatient = currentPatient;
+    }
+
+    public AppointmentCursor getAppointmentCursor() {
+        return appointmentCursor;
+    }
+
+    public void setAppointmentCursor(AppointmentCursor appointmentCursor) {
+        this.appointmentCursor = appointmentCursor;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public long getLastWriteAt() {
+        return lastWriteAt;
+    }
+
+    public void setLastWriteAt(long lastWriteAt) {
+        this.lastWriteAt = lastWriteAt;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public static class AppointmentCursor {
+        private final Date from;
+        private final Date to;
+        private final Appointment last;
+
+        public AppointmentCursor(Date from, Date to, Appointment last) {
+            this.from = from;
+            this.to = to;
+            this.last = last;
+        }
+
+        public Date getFrom() {
+            return from;
+        }
+
+        public Date getTo() {
+            return to;
+        }
+
+        public Appointment getLast() {
+            return last;
+        }
+    }
+}
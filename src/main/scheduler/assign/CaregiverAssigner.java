@@ -0,0 +1,35 @@
+package scheduler.assign;
+
+import java.time.LocalDateTime;
+
+// Decides which of the caregivers free in a slot gets the next appointment in it. Slots are identified
+// by their start time.
+// Implementations are not thread safe, the storage calls them while holding its write lock.
+public interface CaregiverAssigner {
+
+    // Picks the strategy named by the Assignment environment variable: least_loaded (the default),
+    // round_robin or random
+    static CaregiverAssigner create() {
+        return create(System.getenv("Assignment") == null ? "least_loaded" : System.getenv("Assignment"));
+    }
+
+    static CaregiverAssigner create(String strategy) {
+        switch (strategy.toLowerCase()) {
+            case "least_loaded":
+                return new LeastLoadedAssigner();
+            case "round_robin":
+                return new RoundRobinAssigner();
+            case "random":
+                return new RandomAssigner();
+            default:
+                throw new IllegalArgumentException("Unknown assignment strategy " + strategy);
+        }
+    }
+
+    // Makes the caregiver a candidate in the given slot, it must not be one already
+    void addAvailable(LocalDateTime slot, String caregiver);
+
+    // Removes and returns the caregiver chosen for an appointment in the given slot,
+    // or null if nobody is available
+    String assign(LocalDateTime slot);
+}
@@ -0,0 +1,11 @@
+package scheduler.assign;
+
+// Assigns the available caregiver that has been given the fewest appointments on the slot's date so far.
+// Canceling does not lower the count, the slot is simply offered again.
+public class LeastLoadedAssigner extends OrderedAssigner {
+
+    @Override
+    protected long nextKey(long key) {
+        return key + 1;
+    }
+}
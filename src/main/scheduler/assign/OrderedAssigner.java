@@ -0,0 +1,128 @@
+package scheduler.assign;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps the caregivers free in each slot in a heap ordered by each caregiver's key on the slot's date, smallest
+// first, so appointments are spread over the caregivers of each day the way the database orders them. Keys only
+// grow, so a caregiver who is given an appointment is not moved in the heaps of the day's other slots: each
+// entry keeps the key it was added with, and when the smallest entry of a slot turns out to be out of date it
+// is given the current key and sifted down. The first entry that is up to date has the smallest key in the
+// slot, since no other entry's key can be smaller than the key it was added with. Every step is O(log n) in the
+// caregivers free in the slot, and an entry is only brought up to date when its caregiver was given an
+// appointment since.
+abstract class OrderedAssigner implements CaregiverAssigner {
+
+    // an entry is the key above INDEX_BITS and the caregiver's index below, so entries order by key, then index
+    private static final int INDEX_BITS = 24;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final ArrayList<String> caregivers = new ArrayList<>();
+    // date -> each caregiver's key on that date, by index
+    private final Map<LocalDate, long[]> keys = new HashMap<>();
+    private final Map<LocalDateTime, Heap> available = new HashMap<>();
+
+    // returns the caregiver's key after it was given an appointment, it must be larger than the key passed in
+    protected abstract long nextKey(long key);
+
+    @Override
+    public void addAvailable(LocalDateTime slot, String caregiver) {
+        int index = index(caregiver);
+        long[] dayKeys = keys.get(slot.toLocalDate());
+        if (dayKeys == null || dayKeys.length <= index) {
+            dayKeys = dayKeys == null ? new long[Math.max(caregivers.size(), 16)] :
+                    Arrays.copyOf(dayKeys, Math.max(caregivers.size(), dayKeys.length * 2));
+            keys.put(slot.toLocalDate(), dayKeys);
+        }
+        available.computeIfAbsent(slot, s -> new Heap()).add(entry(dayKeys, index));
+    }
+
+    @Override
+    public String assign(LocalDateTime slot) {
+        Heap candidates = available.get(slot);
+        if (candidates == null) {
+            return null;
+        }
+        // every caregiver in the heap was added through addAvailable, so the day's keys cover its index
+        long[] dayKeys = keys.get(slot.toLocalDate());
+        int chosen = (int) (candidates.first() & INDEX_MASK);
+        while (candidates.first() != entry(dayKeys, chosen)) {
+            candidates.replaceFirst(entry(dayKeys, chosen));
+            chosen = (int) (candidates.first() & INDEX_MASK);
+        }
+        candidates.removeFirst();
+        if (candidates.size == 0) {
+            available.remove(slot);
+        }
+        dayKeys[chosen] = nextKey(dayKeys[chosen]);
+        return caregivers.get(chosen);
+    }
+
+    private static long entry(long[] dayKeys, int index) {
+        return dayKeys[index] << INDEX_BITS | index;
+    }
+
+    private int index(String caregiver) {
+        Integer index = indexes.get(caregiver);
+        if (index == null) {
+            index = caregivers.size();
+            if (index > INDEX_MASK) {
+                throw new IllegalStateException("Too many caregivers");
+            }
+            indexes.put(caregiver, index);
+            caregivers.add(caregiver);
+        }
+        return index;
+    }
+
+    // binary min-heap of entries
+    private static class Heap {
+        private long[] entries = new long[4];
+        private int size = 0;
+
+        private long first() {
+            return entries[0];
+        }
+
+        private void add(long entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && entries[(i - 1) / 2] > entry) {
+                entries[i] = entries[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            entries[i] = entry;
+        }
+
+        private void removeFirst() {
+            long last = entries[--size];
+            if (size > 0) {
+                replaceFirst(last);
+            }
+        }
+
+        // replaces the first entry with a larger one
+        private void replaceFirst(long entry) {
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && entries[child + 1] < entries[child]) {
+                    child++;
+                }
+                if (entries[child] >= entry) {
+                    break;
+                }
+                entries[i] = entries[child];
+                i = child;
+            }
+            entries[i] = entry;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package scheduler.assign;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Assigns a random available caregiver, the way reserve originally did
+public class RandomAssigner implements CaregiverAssigner {
+
+    private final Map<LocalDateTime, ArrayList<String>> available = new HashMap<>();
+
+    @Override
+    public void addAvailable(LocalDateTime slot, String caregiver) {
+        available.computeIfAbsent(slot, s -> new ArrayList<>()).add(caregiver);
+    }
+
+    @Override
+    public String assign(LocalDateTime slot) {
+        ArrayList<String> candidates = available.get(slot);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        // move the last candidate into the chosen one's place so removal is O(1)
+        int chosen = ThreadLocalRandom.current().nextInt(candidates.size());
+        String caregiver = candidates.get(chosen);
+        candidates.set(chosen, candidates.get(candidates.size() - 1));
+        candidates.remove(candidates.size() - 1);
+        return caregiver;
+    }
+}
@@ -0,0 +1,13 @@
+package scheduler.assign;
+
+// Assigns the available caregiver that has waited longest since its last appointment on the slot's date,
+// caregivers that have none on that date go first.
+public class RoundRobinAssigner extends OrderedAssigner {
+
+    private long sequence = 0;
+
+    @Override
+    protected long nextKey(long key) {
+        return ++sequence;
+    }
+}
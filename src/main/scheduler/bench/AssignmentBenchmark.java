@@ -0,0 +1,86 @@
+package scheduler.bench;
+
+import scheduler.assign.CaregiverAssigner;
+import scheduler.model.Slot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Simulates bookings in random slots of random days against each assignment strategy and reports how evenly
+// each day's appointments are spread over the caregivers free that day, and how fast the assignments are made.
+// Usage: java scheduler.bench.AssignmentBenchmark [caregivers] [days] [availability percent] [bookings]
+// The defaults are 1000 caregivers, each available all day on 60% of 365 days, and 150k bookings.
+public class AssignmentBenchmark {
+
+    private static final long SEED = 42;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+    private static final String[] STRATEGIES = {"random", "round_robin", "least_loaded"};
+
+    public static void main(String[] args) {
+        int caregivers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+        int availability = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int bookings = args.length > 3 ? Integer.parseInt(args[3]) : 150_000;
+
+        System.out.printf("%-14s %10s %10s %6s %6s %8s %14s%n", "strategy", "booked", "no slot", "min", "max",
+                "stddev", "ns/assign");
+        for (String strategy : STRATEGIES) {
+            simulate(strategy, caregivers, days, availability, bookings);
+        }
+    }
+
+    private static void simulate(String strategy, int caregivers, int days, int availability, int bookings) {
+        // every strategy sees the same availability and the same sequence of requested days
+        Random random = new Random(SEED);
+        CaregiverAssigner assigner = CaregiverAssigner.create(strategy);
+        // caregiver + " " + day -> appointments that day, for every caregiver free that day
+        Map<String, Integer> load = new HashMap<>();
+        for (int day = 0; day < days; day++) {
+            for (int i = 0; i < caregivers; i++) {
+                if (random.nextInt(100) < availability) {
+                    for (int slot = 0; slot < Slot.PER_DAY; slot++) {
+                        assigner.addAvailable(FIRST_DAY.plusDays(day).atTime(Slot.start(slot)), "caregiver" + i);
+                    }
+                    load.put("caregiver" + i + " " + FIRST_DAY.plusDays(day), 0);
+                }
+            }
+        }
+        LocalDateTime[] requested = new LocalDateTime[bookings];
+        for (int i = 0; i < bookings; i++) {
+            requested[i] = FIRST_DAY.plusDays(random.nextInt(days)).atTime(Slot.start(random.nextInt(Slot.PER_DAY)));
+        }
+
+        String[] assigned = new String[bookings];
+        int unassigned = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < bookings; i++) {
+            assigned[i] = assigner.assign(requested[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < bookings; i++) {
+            if (assigned[i] == null) {
+                unassigned++;
+            } else {
+                load.merge(assigned[i] + " " + requested[i].toLocalDate(), 1, Integer::sum);
+            }
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        double sum = 0;
+        double squares = 0;
+        for (int count : load.values()) {
+            min = Math.min(min, count);
+            max = Math.max(max, count);
+            sum += count;
+            squares += (double) count * count;
+        }
+        double mean = sum / Math.max(load.size(), 1);
+        double stddev = Math.sqrt(Math.max(squares / Math.max(load.size(), 1) - mean * mean, 0));
+        System.out.printf("%-14s %10d %10d %6d %6d %8.2f %14.1f%n", strategy, bookings - unassigned, unassigned,
+                min, max, stddev, (double) elapsed / Math.max(bookings, 1));
+    }
+}
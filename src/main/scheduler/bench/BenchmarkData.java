@@ -0,0 +1,44 @@
+package scheduler.bench;
+
+import scheduler.db.Storage;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Slot;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// The data the benchmarks run against: patients patient0, patient1 ... and caregivers caregiver0, caregiver1 ...
+// who are available all day on each of the days from FIRST_DAY, and a stock of VACCINE
+class BenchmarkData {
+
+    static final long SEED = 42;
+    static final String PASSWORD = "password";
+    static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+    static final String VACCINE = "bench_vaccine";
+
+    // Fills the storage with reproducible data, all accounts share one password so only one hash is computed
+    static void generate(Storage storage, int patients, int caregivers, int days, int doses) throws SQLException {
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(PASSWORD, salt);
+        String hashParams = PasswordHasher.getCurrentParams();
+        for (int i = 0; i < patients; i++) {
+            storage.savePatient(new Patient.PatientBuilder("patient" + i, salt, hash, hashParams).build());
+        }
+        List<Date> dates = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            dates.add(Date.valueOf(FIRST_DAY.plusDays(day)));
+        }
+        for (int i = 0; i < caregivers; i++) {
+            storage.saveCaregiver(new Caregiver.CaregiverBuilder("caregiver" + i, salt, hash, hashParams).build());
+            storage.addAvailability("caregiver" + i, dates, Slot.ALL);
+        }
+        storage.addDoses(Map.of(VACCINE, doses));
+    }
+}
@@ -0,0 +1,140 @@
+package scheduler.bench;
+
+import scheduler.CommandLine;
+import scheduler.CommandTable;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Date;
+import java.time.LocalTime;
+import java.util.Random;
+
+// Compares parsing and dispatching command lines the way Scheduler used to, with String.split and a chain of
+// equals, against CommandLine and CommandTable, and reports lines per second and bytes allocated per line.
+// Each is measured with and without parsing the arguments (dates, times and numbers) of the commands.
+// Usage: java scheduler.bench.ParserBenchmark [lines] [rounds]
+// The defaults parse the same 10k generated lines 200 times after as many rounds of warmup.
+public class ParserBenchmark {
+
+    private static final long SEED = 42;
+    private static final String[] COMMANDS = {"create_patient", "create_caregiver", "login_patient",
+            "login_caregiver", "resume", "search_caregiver_schedule", "find_next_available", "reserve",
+            "join_waitlist", "leave_waitlist", "upload_availability", "upload_availability_range",
+            "upload_availability_file", "cancel", "add_doses", "import_doses", "show_appointments", "show_more",
+            "logout", "stats", "quit"};
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results are folded in here so the JIT cannot drop the work being measured
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        String[] lines = generate(lineCount);
+        CommandTable<String> table = new CommandTable<>(COMMANDS.length);
+        for (String command : COMMANDS) {
+            table.put(command, command);
+        }
+        CommandLine command = new CommandLine();
+
+        System.out.printf("%-32s %14s %14s%n", "", "lines/sec", "bytes/line");
+        bench("split + equals", lines, rounds, line -> splitDispatch(line.split(" ")));
+        bench("CommandLine + CommandTable", lines, rounds, line -> table.find(command.parse(line), 0));
+        bench("split + equals, arguments", lines, rounds, line -> {
+            String[] tokens = line.split(" ");
+            return splitDispatch(tokens) + splitArguments(tokens);
+        });
+        bench("CommandLine + table, arguments", lines, rounds, line -> {
+            int found = table.find(command.parse(line), 0);
+            return found + arguments(command);
+        });
+    }
+
+    private static void bench(String name, String[] lines, int rounds, Operation operation) {
+        long result = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String line : lines) {
+                result += operation.run(line);
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String line : lines) {
+                result += operation.run(line);
+            }
+        }
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        sink += result;
+        long parsed = (long) lines.length * rounds;
+        System.out.printf("%-32s %14.0f %14.1f%n", name, parsed * 1e9 / elapsed, (double) allocated / parsed);
+    }
+
+    // The dispatch Scheduler did before CommandTable
+    private static int splitDispatch(String[] tokens) {
+        String operation = tokens[0];
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (operation.equals(COMMANDS[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long splitArguments(String[] tokens) {
+        if (tokens[0].equals("cancel")) {
+            return Integer.parseInt(tokens[1]);
+        }
+        if (tokens[0].equals("reserve")) {
+            return Date.valueOf(tokens[1]).getTime() + LocalTime.parse(tokens[3]).toSecondOfDay();
+        }
+        if (tokens[0].equals("search_caregiver_schedule") || tokens[0].equals("upload_availability")) {
+            return Date.valueOf(tokens[1]).getTime();
+        }
+        return 0;
+    }
+
+    private static long arguments(CommandLine command) {
+        if (command.is(0, "cancel")) {
+            return command.getInt(1);
+        }
+        if (command.is(0, "reserve")) {
+            return command.getDate(1).getTime() + command.getTime(3).toSecondOfDay();
+        }
+        if (command.is(0, "search_caregiver_schedule") || command.is(0, "upload_availability")) {
+            return command.getDate(1).getTime();
+        }
+        return 0;
+    }
+
+    // A mix of the commands a busy server sees, searches and reservations most of all
+    private static String[] generate(int count) {
+        Random random = new Random(SEED);
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            String date = String.format("2030-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                lines[i] = "search_caregiver_schedule " + date;
+            } else if (kind < 6) {
+                lines[i] = "reserve " + date + " pfizer " + String.format("%02d:%02d", 9 + random.nextInt(8),
+                        random.nextBoolean() ? 0 : 30);
+            } else if (kind < 7) {
+                lines[i] = "upload_availability " + date;
+            } else if (kind < 8) {
+                lines[i] = "cancel " + random.nextInt(1_000_000);
+            } else if (kind < 9) {
+                lines[i] = "show_appointments";
+            } else {
+                lines[i] = "login_patient patient" + random.nextInt(100_000) + " password";
+            }
+        }
+        return lines;
+    }
+
+    private interface Operation {
+        long run(String line);
+    }
+}
@@ -0,0 +1,113 @@
+package scheduler.bench;
+
+import scheduler.CommandExecutor;
+import scheduler.Session;
+import scheduler.db.Storage;
+import scheduler.util.PasswordHasher;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static scheduler.bench.BenchmarkData.FIRST_DAY;
+import static scheduler.bench.BenchmarkData.PASSWORD;
+import static scheduler.bench.BenchmarkData.SEED;
+import static scheduler.bench.BenchmarkData.VACCINE;
+
+// Replays the same scripted sessions through a CommandExecutor with 1, 2, 4 ... threads up to the number of
+// cores and reports the throughput of each, to show how command execution scales. Each session is fed by its
+// own thread, the way the server reads each connection, and logs in as its own patient to run a mix of
+// searches, listings and reservations.
+// Run with Storage=memory and a low HashIterations, otherwise the logins dominate.
+// Usage: java scheduler.bench.ReplayBenchmark [sessions] [commands per session] [caregivers] [days] [max threads]
+// The defaults are 64 sessions of 200 commands against 100 caregivers available on each of 60 days, replayed
+// with up to as many threads as there are cores.
+public class ReplayBenchmark {
+
+    public static void main(String[] args) throws SQLException, InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int caregivers = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int days = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        Storage storage = Storage.get();
+        System.out.println("Storage: " + storage.getClass().getSimpleName() + ", hash parameters: " +
+                PasswordHasher.getCurrentParams());
+        BenchmarkData.generate(storage, sessions, caregivers, days, sessions * days);
+
+        List<List<String>> scripts = new ArrayList<>();
+        Random random = new Random(SEED);
+        for (int i = 0; i < sessions; i++) {
+            scripts.add(script(random, "patient" + i, commands, days));
+        }
+
+        long total = scripts.stream().mapToLong(List::size).sum();
+        // the first pass only warms up the JIT, the reservations it makes are there for every later pass too
+        replay(scripts, maxThreads);
+        System.out.printf("%8s %10s %10s %14s %8s%n", "threads", "commands", "ms", "commands/sec", "speedup");
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            long elapsed = replay(scripts, threads);
+            double throughput = total * 1e9 / elapsed;
+            if (threads == 1) {
+                baseline = throughput;
+            }
+            System.out.printf("%8d %10d %10d %14.1f %8.2f%n", threads, total, elapsed / 1_000_000, throughput,
+                    throughput / baseline);
+            if (threads == maxThreads) {
+                break;
+            }
+        }
+    }
+
+    // Runs every script in its own session and returns the time it took in nanoseconds
+    private static long replay(List<List<String>> scripts, int threads) throws InterruptedException {
+        CommandExecutor executor = new CommandExecutor(String.valueOf(threads));
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        List<Thread> feeders = new ArrayList<>();
+        for (List<String> script : scripts) {
+            CommandExecutor.Queue queue = executor.open(new Session(out), () -> { });
+            feeders.add(new Thread(() -> {
+                for (String line : script) {
+                    queue.submit(line);
+                }
+                queue.close();
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread feeder : feeders) {
+            feeder.start();
+        }
+        for (Thread feeder : feeders) {
+            feeder.join();
+        }
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        executor.shutdown();
+        return elapsed;
+    }
+
+    // Mostly reads, with a reservation now and then, between a login and a logout
+    private static List<String> script(Random random, String patient, int commands, int days) {
+        List<String> script = new ArrayList<>();
+        script.add("login_patient " + patient + " " + PASSWORD);
+        for (int i = 0; i < commands - 2; i++) {
+            LocalDate day = FIRST_DAY.plusDays(random.nextInt(days));
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                script.add("search_caregiver_schedule " + day);
+            } else if (kind < 7) {
+                script.add("find_next_available " + day + " " + VACCINE + " 7");
+            } else if (kind < 9) {
+                script.add("show_appointments");
+            } else {
+                script.add("reserve " + day + " " + VACCINE);
+            }
+        }
+        script.add("logout");
+        return script;
+    }
+}
@@ -0,0 +1,110 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.Storage;
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Slot;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static scheduler.bench.BenchmarkData.FIRST_DAY;
+import static scheduler.bench.BenchmarkData.PASSWORD;
+import static scheduler.bench.BenchmarkData.SEED;
+import static scheduler.bench.BenchmarkData.VACCINE;
+
+// Measures the cost of each Scheduler command against generated data of a realistic size.
+// Run with Storage=memory to measure the scheduler itself rather than the database.
+// Usage: java scheduler.bench.SchedulerBenchmark [patients] [caregivers] [days]
+// The defaults generate 100k patients and 1000 caregivers available all day on each of 63 days
+// (about 1M availability slots).
+public class SchedulerBenchmark {
+
+    // results are folded in here so the JIT cannot drop the work being measured
+    private static volatile long sink;
+
+    public static void main(String[] args) throws SQLException {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int caregivers = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 63;
+        Storage storage = Storage.get();
+        System.out.println("Storage: " + storage.getClass().getSimpleName() + ", hash parameters: " +
+                PasswordHasher.getCurrentParams());
+
+        long start = System.nanoTime();
+        BenchmarkData.generate(storage, patients, caregivers, days, patients);
+        System.out.println("Generated " + patients + " patients, " + caregivers + " caregivers, " +
+                (long) caregivers * days * Slot.PER_DAY + " availability slots in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        Random random = new Random(SEED);
+        byte[] salt = Util.generateSalt();
+        byte[] padded = Arrays.copyOf(new byte[]{1, 2}, 16);
+        Session session = new Session(new PrintStream(OutputStream.nullOutputStream()));
+        Scheduler.execute(session, "login_patient patient0 " + PASSWORD);
+
+        bench("Util.generateHash", 5, 20, i -> Util.generateHash(PASSWORD, salt).length);
+        bench("Util.trim", 100_000, 1_000_000, i -> Util.trim(padded).length);
+        bench("PatientGetter.get", 5, 20, i ->
+                new Patient.PatientGetter("patient" + random.nextInt(patients), PASSWORD).get().hashCode());
+        bench("CaregiverGetter.get", 5, 20, i ->
+                new Caregiver.CaregiverGetter("caregiver" + random.nextInt(caregivers), PASSWORD).get().hashCode());
+        bench("search_caregiver_schedule", 1_000, 10_000, i -> Scheduler.execute(session,
+                "search_caregiver_schedule " + FIRST_DAY.plusDays(random.nextInt(days))) ? 1 : 0);
+
+        // every patient books one appointment on a random day, then the same appointments are shown and canceled
+        int bookings = Math.min(patients, caregivers * days);
+        List<Appointment> booked = new ArrayList<>();
+        bench("reserve", 0, bookings, i -> {
+            Appointment appointment = new Appointment.AppointmentBuilder("patient" + i, VACCINE,
+                    Date.valueOf(FIRST_DAY.plusDays(random.nextInt(days)))).reserve();
+            if (appointment.getStatus() == Appointment.Status.BOOKED) {
+                booked.add(appointment);
+            }
+            return appointment.getAid();
+        });
+        bench("show_appointments", 1_000, 10_000, i -> {
+            Session patient = new Session(session.getOut());
+            patient.setCurrentPatient(new Patient.PatientBuilder("patient" + random.nextInt(bookings), null, null,
+                    null).build());
+            return Scheduler.execute(patient, "show_appointments") ? 1 : 0;
+        });
+        // only the patient who booked an appointment may cancel it
+        bench("cancel", 0, booked.size(), i -> {
+            Session patient = new Session(session.getOut());
+            patient.setCurrentPatient(new Patient.PatientBuilder(booked.get(i).getPatient(), null, null, null)
+                    .build());
+            return Scheduler.execute(patient, "cancel " + booked.get(i).getAid()) ? 1 : 0;
+        });
+    }
+
+    private static void bench(String name, int warmup, int iterations, Operation operation) throws SQLException {
+        long result = 0;
+        for (int i = 0; i < warmup; i++) {
+            result += operation.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += operation.run(i);
+        }
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        sink += result;
+        System.out.printf("%-28s %10d ops %14.1f ns/op %14.1f ops/sec%n", name, iterations,
+                (double) elapsed / Math.max(iterations, 1), iterations * 1e9 / elapsed);
+    }
+
+    private interface Operation {
+        long run(int i) throws SQLException;
+    }
+}
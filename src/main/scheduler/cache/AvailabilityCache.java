@@ -0,0 +1,87 @@
+package scheduler.cache;
+
+import scheduler.db.Storage;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AvailabilityCache {
+
+    // constants for bounding the cache
+    private static final int MAX_DATES = 366;
+    // other Scheduler processes can change availability too, so entries are only trusted for a short while
+    private static final long TTL_MS = 30_000;
+
+    // date -> caregivers available on that date with their free slots, kept in access order so the least
+    // recently used date is evicted
+    private static final Map<LocalDate, Entry> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, Entry> eldest) {
+            return size() > MAX_DATES;
+        }
+    };
+    // bumped on every invalidation so a load that raced with a write is not cached
+    private static long generation = 0;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    // Returns the caregivers available on the given date with their free slots, loading them on a miss
+    public static Map<String, Integer> get(Date time) throws SQLException {
+        LocalDate day = time.toLocalDate();
+        long loadGeneration;
+        synchronized (cache) {
+            Entry entry = cache.get(day);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < TTL_MS) {
+                hits.incrementAndGet();
+                return entry.caregivers;
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+        Map<String, Integer> caregivers = load(time);
+        synchronized (cache) {
+            if (generation == loadGeneration) {
+                cache.put(day, new Entry(caregivers, System.currentTimeMillis()));
+            }
+        }
+        return caregivers;
+    }
+
+    // Must be called after any write to Availabilities for the given date
+    public static void invalidate(Date time) {
+        synchronized (cache) {
+            cache.remove(time.toLocalDate());
+            generation++;
+        }
+    }
+
+    public static String getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return "Availability cache: " + size + " dates, " + hitCount + " hits, " + (total - hitCount) +
+                " misses, hit ratio " + (total == 0 ? 0 : hitCount * 100 / total) + "%";
+    }
+
+    private static Map<String, Integer> load(Date time) throws SQLException {
+        return Map.copyOf(Storage.get().getAvailability(time));
+    }
+
+    private static class Entry {
+        private final Map<String, Integer> caregivers;
+        private final long loadedAt;
+
+        private Entry(Map<String, Integer> caregivers, long loadedAt) {
+            this.caregivers = caregivers;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package scheduler.cache;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Remembers who logged in, so a user can come back with the token they were given instead of their password,
+// without looking up their account and hashing the password again. Tokens are random and mean nothing on their
+// own; they stay valid while they are used at least every TTL and are dropped on logout or when the
+// cache is full and they are the least recently used.
+public class SessionCache {
+
+    // constants for bounding the cache
+    private static final int MAX_SESSIONS = 10_000;
+    private static final long TTL_MS = 30 * 60_000;
+    private static final int TOKEN_BYTES = 24;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    // token -> logged-in user, kept in access order so the least recently used session is evicted
+    private static final Map<String, Entry> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+
+    private static final AtomicLong resumed = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    // Returns a new token for the patient
+    public static String issue(Patient patient) {
+        return issue(new Entry(patient, null));
+    }
+
+    // Returns a new token for the caregiver
+    public static String issue(Caregiver caregiver) {
+        return issue(new Entry(null, caregiver));
+    }
+
+    // Returns the user the token was issued to, or null if it is unknown or expired
+    public static Entry resume(String token) {
+        long now = System.currentTimeMillis();
+        synchronized (sessions) {
+            Entry entry = sessions.get(token);
+            if (entry == null || now - entry.usedAt >= TTL_MS) {
+                sessions.remove(token);
+                rejected.incrementAndGet();
+                return null;
+            }
+            entry.usedAt = now;
+            resumed.incrementAndGet();
+            return entry;
+        }
+    }
+
+    public static void revoke(String token) {
+        synchronized (sessions) {
+            sessions.remove(token);
+        }
+    }
+
+    public static String getStats() {
+        int size;
+        synchronized (sessions) {
+            size = sessions.size();
+        }
+        return "Session cache: " + size + " sessions, " + resumed.get() + " resumed, " + rejected.get() +
+                " rejected";
+    }
+
+    private static String issue(Entry entry) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        synchronized (sessions) {
+            sessions.put(token, entry);
+        }
+        return token;
+    }
+
+    public static class Entry {
+        private final Patient patient;
+        private final Caregiver caregiver;
+        private long usedAt = System.currentTimeMillis();
+
+        private Entry(Patient patient, Caregiver caregiver) {
+            this.patient = patient;
+            this.caregiver = caregiver;
+        }
+
+        // null if the session is a caregiver's
+        public Patient getPatient() {
+            return patient;
+        }
+
+        // null if the session is a patient's
+        public Caregiver getCaregiver() {
+            return caregiver;
+        }
+    }
+}
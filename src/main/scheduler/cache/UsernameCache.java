@@ -0,0 +1,181 @@
+package scheduler.cache;
+
+import scheduler.db.Storage;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Answers "is this username taken?" for create_patient and create_caregiver without asking the database in
+// the common case. A Bloom filter over every username, loaded the first time it is needed, says for sure
+// that a name is free; only names it might contain are looked up. Users created by this process are added
+// to it as they are saved. Other Scheduler processes can create users too, so the filter is reloaded
+// every few minutes. A name it wrongly calls free is still caught by the primary key when it is saved, and
+// existsAfterFailedSave tells that failure apart from any other.
+public class UsernameCache {
+
+    // constants for sizing the filters
+    private static final int BITS_PER_NAME = 10;
+    private static final int HASHES = 7;
+    private static final int MIN_CAPACITY = 1024;
+    private static final long REFRESH_MS = 5 * 60_000;
+
+    private static final Filter patients = new Filter(false);
+    private static final Filter caregivers = new Filter(true);
+
+    private static final AtomicLong skipped = new AtomicLong();
+    private static final AtomicLong lookups = new AtomicLong();
+    private static final AtomicLong falsePositives = new AtomicLong();
+    private static final AtomicLong staleNegatives = new AtomicLong();
+
+    public static boolean exists(String username, boolean caregiver) throws SQLException {
+        if (!filter(caregiver).mightContain(username)) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        lookups.incrementAndGet();
+        boolean exists = caregiver ? Storage.get().caregiverExists(username) :
+                Storage.get().patientExists(username);
+        if (!exists) {
+            falsePositives.incrementAndGet();
+        }
+        return exists;
+    }
+
+    // Must be called after a user is saved
+    public static void add(String username, boolean caregiver) {
+        filter(caregiver).add(username);
+    }
+
+    // Must be called when saving a user failed, returns true if the name is taken after all. The name is then
+    // added to the filter, which missed it because another process created it since the filter was loaded.
+    public static boolean existsAfterFailedSave(String username, boolean caregiver) throws SQLException {
+        boolean exists = caregiver ? Storage.get().caregiverExists(username) :
+                Storage.get().patientExists(username);
+        if (exists) {
+            staleNegatives.incrementAndGet();
+            filter(caregiver).add(username);
+        }
+        return exists;
+    }
+
+    public static String getStats() {
+        long skippedCount = skipped.get();
+        long total = skippedCount + lookups.get();
+        return "Username cache: " + patients.size() + " patients, " + caregivers.size() + " caregivers, " +
+                skippedCount + " lookups skipped, " + (total - skippedCount) + " looked up, " +
+                falsePositives.get() + " false positives, " + staleNegatives.get() + " stale negatives, skip ratio " +
+                (total == 0 ? 0 : skippedCount * 100 / total) + "%";
+    }
+
+    private static Filter filter(boolean caregiver) {
+        return caregiver ? caregivers : patients;
+    }
+
+    private static class Filter {
+        private final boolean caregiver;
+        private long[] bits = null;
+        private int names = 0;
+        private int capacity = 0;
+        private long loadedAt = 0;
+        // names added while a load is running, they are added again to the filter it builds
+        private List<String> addedDuringLoad = null;
+
+        private Filter(boolean caregiver) {
+            this.caregiver = caregiver;
+        }
+
+        private boolean mightContain(String username) throws SQLException {
+            long hash = hash(username);
+            synchronized (this) {
+                if (bits != null && System.currentTimeMillis() - loadedAt < REFRESH_MS && names <= capacity) {
+                    return test(bits, hash);
+                }
+                if (addedDuringLoad != null) {
+                    // another thread is loading, so look the name up rather than wait for it
+                    return true;
+                }
+                addedDuringLoad = new ArrayList<>();
+            }
+            List<String> usernames;
+            try {
+                usernames = Storage.get().getUsernames(caregiver);
+            } catch (SQLException e) {
+                synchronized (this) {
+                    addedDuringLoad = null;
+                }
+                throw e;
+            }
+            // twice the names loaded, so the false positive rate stays low while users are added
+            int newCapacity = Math.max(MIN_CAPACITY, usernames.size() * 2);
+            long[] newBits = new long[(int) (((long) newCapacity * BITS_PER_NAME + 63) / 64)];
+            for (String name : usernames) {
+                set(newBits, hash(name));
+            }
+            synchronized (this) {
+                for (String name : addedDuringLoad) {
+                    set(newBits, hash(name));
+                }
+                bits = newBits;
+                names = usernames.size() + addedDuringLoad.size();
+                capacity = newCapacity;
+                loadedAt = System.currentTimeMillis();
+                addedDuringLoad = null;
+                return test(bits, hash);
+            }
+        }
+
+        private synchronized void add(String username) {
+            long hash = hash(username);
+            if (bits != null) {
+                set(bits, hash);
+                names++;
+            }
+            if (addedDuringLoad != null) {
+                addedDuringLoad.add(username);
+            }
+        }
+
+        private synchronized int size() {
+            return names;
+        }
+
+        // the k bit positions are derived from the two halves of one 64-bit hash
+        private static boolean test(long[] bits, long hash) {
+            long size = (long) bits.length * 64;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void set(long[] bits, long hash) {
+            long size = (long) bits.length * 64;
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Integer.toUnsignedLong(h1 + i * h2) % size;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        // 64-bit FNV-1a over the UTF-8 bytes of the name. The database compares usernames case-insensitively,
+        // so names that differ only in case must hash the same.
+        private static long hash(String username) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : username.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package scheduler.cache;
+
+import scheduler.db.Storage;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VaccineCache {
+
+    // other Scheduler processes can change the inventory too, so a snapshot is only trusted for a short while
+    private static final long TTL_MS = 30_000;
+    // SQL Server compares vaccine names ignoring case, so lookups do too. Names that differ only in case sort
+    // by case, so a storage that keeps them apart still has all of them in the snapshot.
+    private static final Comparator<String> NAME_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    // readers only ever see a complete, immutable snapshot, so lookups never take a lock. Every invalidation
+    // puts a new expired snapshot here, so a load only publishes if nothing was invalidated since it started.
+    private static final AtomicReference<Snapshot> snapshot = new AtomicReference<>(expired());
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    // Returns the current inventory, reloading it if it was invalidated or is too old
+    public static Snapshot get() throws SQLException {
+        Snapshot current = snapshot.get();
+        if (System.currentTimeMillis() - current.loadedAt < TTL_MS) {
+            hits.incrementAndGet();
+            return current;
+        }
+        misses.incrementAndGet();
+        Snapshot loaded = load();
+        snapshot.compareAndSet(current, loaded);
+        return loaded;
+    }
+
+    // Must be called after any write to Vaccines
+    public static void invalidate() {
+        snapshot.set(expired());
+    }
+
+    public static String getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return "Vaccine cache: " + hitCount + " hits, " + (total - hitCount) + " misses, hit ratio " +
+                (total == 0 ? 0 : hitCount * 100 / total) + "%";
+    }
+
+    private static Snapshot expired() {
+        return new Snapshot(new String[0], new int[0], 0);
+    }
+
+    private static Snapshot load() throws SQLException {
+        // sorted here so lookups can binary search, the storage may return the vaccines in any order
+        TreeMap<String, Integer> inventory = new TreeMap<>(NAME_ORDER);
+        inventory.putAll(Storage.get().getVaccines());
+        String[] names = new String[inventory.size()];
+        int[] doses = new int[inventory.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> vaccine : inventory.entrySet()) {
+            names[i] = vaccine.getKey();
+            doses[i] = vaccine.getValue();
+            i++;
+        }
+        return new Snapshot(names, doses, System.currentTimeMillis());
+    }
+
+    public static class Snapshot {
+        // sorted by name, doses[i] belongs to names[i]
+        private final String[] names;
+        private final int[] doses;
+        private final long loadedAt;
+
+        private Snapshot(String[] names, int[] doses, long loadedAt) {
+            this.names = names;
+            this.doses = doses;
+            this.loadedAt = loadedAt;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int i) {
+            return names[i];
+        }
+
+        public int getDoses(int i) {
+            return doses[i];
+        }
+
+        // Returns the doses available for the vaccine, or -1 if there is no such vaccine. The name is matched
+        // ignoring case.
+        public int getDoses(String name) {
+            int i = Arrays.binarySearch(names, name, String.CASE_INSENSITIVE_ORDER);
+            return i < 0 ? -1 : doses[i];
+        }
+    }
+}
@@ -1,20 +1,73 @@
 package scheduler.db;
 
+import scheduler.metrics.Metrics;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Hands out pooled connections to the primary database, and to a read replica if one is configured with the
+// ReadServer (and optionally ReadDBName) environment variables. Only connections asked for with
+// ConnectionManager(true) can go to the replica, and only while the current command is read-only and its
+// session has not written for ReplicaLagMs (5 seconds by default), so a session always reads its own writes.
+// A command counts as a write if it called recordWrite, which TimedStorage does for every storage write.
+// When the replica has no connection to spare or cannot be reached, reads fall back to the primary.
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
+    private static final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+    private static final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
             ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    private static final String replicaUrl = System.getenv("ReadServer") == null ? null :
+            "jdbc:sqlserver://" + System.getenv("ReadServer") + ".database.windows.net:1433;database=" +
+                    (System.getenv("ReadDBName") == null ? System.getenv("DBName") : System.getenv("ReadDBName")) +
+                    ";applicationIntent=ReadOnly";
+    private static final String userName = System.getenv("UserID");
+    private static final String userPass = System.getenv("Password");
+
+    // constants for the shared connection pools
+    private static final int MAX_POOL_SIZE = 10;
+    private static final long ACQUIRE_TIMEOUT_MS = 30_000;
+    // reads wait less for the replica, since the primary can serve them as well
+    private static final long REPLICA_ACQUIRE_TIMEOUT_MS = 1_000;
+    private static final long IDLE_TIMEOUT_MS = 5 * 60_000;
+    private static final long MAX_LIFETIME_MS = 30 * 60_000;
+    // connections idle for less than this are handed out without a round trip to validate them
+    private static final long VALIDATION_INTERVAL_MS = 5_000;
+    private static final int VALIDATION_TIMEOUT_S = 2;
+    // how far the replica may be behind the primary, a session reads from the primary for this long after it wrote
+    private static final long REPLICA_LAG_MS = getReplicaLag();
 
+    // the pools are shared by every ConnectionManager so that a command reuses connections
+    // instead of paying a TLS handshake each time a helper needs the database
+    private static final Pool PRIMARY = new Pool("Connection pool",
+            () -> DriverManager.getConnection(connectionUrl, userName, userPass));
+    private static final Pool REPLICA = replicaUrl == null ? null : new Pool("Replica pool",
+            () -> DriverManager.getConnection(replicaUrl, userName, userPass));
+    // whether the command running on this thread may read from the replica
+    private static final ThreadLocal<Boolean> replicaAllowed = ThreadLocal.withInitial(() -> false);
+    // whether the command running on this thread wrote to the storage
+    private static final ThreadLocal<Boolean> wrote = ThreadLocal.withInitial(() -> false);
+
+    private final boolean read;
+    private final Pool primary;
+    private final Pool replica;
+    private Pool pool = null;
+    private PooledConnection pooled = null;
     private Connection con = null;
 
     public ConnectionManager() {
+        this(false);
+    }
+
+    // read is true if the connection is only used to read data that may be a little behind
+    public ConnectionManager(boolean read) {
+        this(read, PRIMARY, REPLICA);
         try {
             Class.forName(driverName);
         } catch (ClassNotFoundException e) {
@@ -22,20 +75,242 @@ public class ConnectionManager {
         }
     }
 
-    public Connection createConnection() {
+    // Uses the given pools instead of the shared ones, replica is null if there is none
+    ConnectionManager(boolean read, Pool primary, Pool replica) {
+        this.read = read;
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    // Must be called before every command runs, with the time its session last ran a command that wrote
+    // (0 if never)
+    public static void startCommand(boolean readOnly, long lastWriteAt) {
+        replicaAllowed.set(readOnly && System.currentTimeMillis() - lastWriteAt >= REPLICA_LAG_MS);
+        wrote.set(false);
+    }
+
+    // Must be called before a storage write, whether or not it succeeds
+    public static void recordWrite() {
+        wrote.set(true);
+    }
+
+    // Returns true if the command wrote to the storage
+    public static boolean endCommand() {
+        replicaAllowed.set(false);
+        boolean commandWrote = wrote.get();
+        wrote.set(false);
+        return commandWrote;
+    }
+
+    // Returns the connection of this manager, borrowing one the first time. Throws if no connection could be had
+    // from the primary, reads that may use the replica try it first.
+    public Connection createConnection() throws SQLException {
+        if (this.con != null) {
+            return this.con;
+        }
+        if (read && replica != null && replicaAllowed.get()) {
+            try {
+                Connection connection = borrow(replica, REPLICA_ACQUIRE_TIMEOUT_MS);
+                if (replica.down.compareAndSet(true, false)) {
+                    System.out.println("The " + replica.name + " is available again");
+                }
+                return connection;
+            } catch (SQLException e) {
+                // the primary has the same data and more, only slower to get to. Only the first failure of an
+                // outage is printed, the pool stats count them all.
+                replica.unavailableCount.incrementAndGet();
+                if (replica.down.compareAndSet(false, true)) {
+                    System.out.println(e.getMessage() + ", reading from the primary until it is available again");
+                }
+            }
+        }
+        return borrow(primary, ACQUIRE_TIMEOUT_MS);
+    }
+
+    private Connection borrow(Pool from, long timeoutMs) throws SQLException {
+        long start = System.nanoTime();
         try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
+            if (!from.permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Timed out waiting for a connection from the " +
+                        from.name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection from the " +
+                    from.name, e);
+        }
+        Metrics.recordConnectionAcquire(System.nanoTime() - start);
+        try {
+            pooled = from.borrow();
         } catch (SQLException e) {
-            e.printStackTrace();
+            from.permits.release();
+            throw new SQLException("Could not connect to the " + from.name, e.getSQLState(), e.getErrorCode(), e);
         }
+        pool = from;
+        con = pooled.connection;
         return con;
     }
 
     public void closeConnection() {
+        if (this.pooled == null) {
+            return;
+        }
+        PooledConnection returning = this.pooled;
+        Pool to = this.pool;
+        this.pooled = null;
+        this.pool = null;
+        this.con = null;
         try {
-            this.con.close();
+            // leave the connection as a fresh one would be for the next borrower
+            if (!returning.connection.getAutoCommit()) {
+                returning.connection.rollback();
+                returning.connection.setAutoCommit(true);
+            }
+            long now = System.currentTimeMillis();
+            if (returning.connection.isClosed() || now - returning.createdAt > MAX_LIFETIME_MS) {
+                to.discard(returning);
+            } else {
+                returning.lastUsed = now;
+                synchronized (to.idle) {
+                    to.idle.push(returning);
+                }
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            to.discard(returning);
+        } finally {
+            to.permits.release();
+        }
+    }
+
+    // Returns how long a session reads from the primary after it wrote, in milliseconds
+    public static long getReplicaLagMs() {
+        return REPLICA_LAG_MS;
+    }
+
+    private static long getReplicaLag() {
+        String lag = System.getenv("ReplicaLagMs");
+        if (lag == null) {
+            return 5_000;
+        }
+        try {
+            long parsed = Long.parseLong(lag.trim());
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("ReplicaLagMs must be a whole number of milliseconds, got \"" + lag + "\"");
+    }
+
+    // Returns a summary of the pool state, the acquire wait times are recorded in Metrics
+    public static String getPoolStats() {
+        return REPLICA == null ? PRIMARY.getStats() : PRIMARY.getStats() + "\n" + REPLICA.getStats();
+    }
+
+    // Closes every idle connection, in-use connections are closed when they are returned
+    public static void shutdown() {
+        PRIMARY.shutdown();
+        if (REPLICA != null) {
+            REPLICA.shutdown();
+        }
+    }
+
+    // Opens a new connection to one database
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    static class Pool {
+        private final String name;
+        private final Opener opener;
+        private final Semaphore permits = new Semaphore(MAX_POOL_SIZE, true);
+        private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+
+        // pool metrics
+        private final AtomicLong createdCount = new AtomicLong();
+        private final AtomicLong evictedCount = new AtomicLong();
+        // times a read fell back to the primary because this pool had no connection for it
+        private final AtomicLong unavailableCount = new AtomicLong();
+        private final AtomicBoolean down = new AtomicBoolean();
+
+        Pool(String name, Opener opener) {
+            this.name = name;
+            this.opener = opener;
+        }
+
+        private String getStats() {
+            int idleCount;
+            synchronized (idle) {
+                idleCount = idle.size();
+            }
+            return name + ": " + (MAX_POOL_SIZE - permits.availablePermits()) + " in use, " +
+                    idleCount + " idle, " + createdCount.get() + " created, " + evictedCount.get() + " evicted" +
+                    (unavailableCount.get() == 0 ? "" : ", unavailable " + unavailableCount.get() + " times");
+        }
+
+        private void shutdown() {
+            synchronized (idle) {
+                while (!idle.isEmpty()) {
+                    discard(idle.pop());
+                }
+            }
+        }
+
+        // Takes the most recently used idle connection that is still healthy, or opens a new one
+        private PooledConnection borrow() throws SQLException {
+            long now = System.currentTimeMillis();
+            while (true) {
+                PooledConnection candidate;
+                synchronized (idle) {
+                    evictIdle(now);
+                    candidate = idle.poll();
+                }
+                if (candidate == null) {
+                    break;
+                }
+                if (now - candidate.createdAt > MAX_LIFETIME_MS) {
+                    discard(candidate);
+                } else if (now - candidate.lastUsed > VALIDATION_INTERVAL_MS
+                        && !candidate.connection.isValid(VALIDATION_TIMEOUT_S)) {
+                    discard(candidate);
+                } else {
+                    return candidate;
+                }
+            }
+            Connection connection = opener.open();
+            createdCount.incrementAndGet();
+            return new PooledConnection(connection, now);
+        }
+
+        // idle connections are pushed to the head, so the stalest ones sit at the tail
+        private void evictIdle(long now) {
+            PooledConnection oldest = idle.peekLast();
+            while (oldest != null && now - oldest.lastUsed > IDLE_TIMEOUT_MS) {
+                discard(idle.pollLast());
+                oldest = idle.peekLast();
+            }
+        }
+
+        private void discard(PooledConnection pooled) {
+            evictedCount.incrementAndGet();
+            try {
+                pooled.connection.close();
+            } catch (SQLException e) {
+                // the connection is being thrown away, nothing else to do
+            }
+        }
+    }
+
+    private static class PooledConnection {
+        private final Connection connection;
+        private final long createdAt;
+        private long lastUsed;
+
+        private PooledConnection(Connection connection, long createdAt) {
+            this.connection = connection;
+            this.createdAt = createdAt;
+            this.lastUsed = createdAt;
         }
     }
 }
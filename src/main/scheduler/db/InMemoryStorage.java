@@ -0,0 +1,357 @@
+package scheduler.db;
+
+import scheduler.assign.CaregiverAssigner;
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Slot;
+import scheduler.model.Vaccine;
+
+import java.sql.Date;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Storage kept entirely in this process, for load testing and running without a database.
+// Reads go straight to the concurrent maps, writes that touch more than one map hold the
+// write lock so they are atomic the way a transaction would be. Nothing survives a restart.
+public class InMemoryStorage implements Storage {
+
+    private static final Comparator<Appointment> PAGE_ORDER = Comparator.comparing(Appointment::getTime)
+            .thenComparingInt(Appointment::getSlot).thenComparingInt(Appointment::getAid);
+
+    private final Object writeLock = new Object();
+    // chooses the caregiver for each reservation, only used while holding the write lock
+    private final CaregiverAssigner assigner = CaregiverAssigner.create();
+
+    private final Map<String, Patient> patients = new ConcurrentHashMap<>();
+    private final Map<String, Caregiver> caregivers = new ConcurrentHashMap<>();
+    // date -> caregiver -> its free slots on that date
+    private final Map<LocalDate, Map<String, Integer>> availabilities = new ConcurrentHashMap<>();
+    // slot start -> number of caregivers free in it, slots nobody is free in are left out so the next free
+    // slot on or after any time is a single ceiling lookup
+    private final NavigableMap<LocalDateTime, Integer> freeSlots = new ConcurrentSkipListMap<>();
+    private final Map<String, Integer> vaccines = new ConcurrentHashMap<>();
+    private final Map<Integer, Appointment> appointments = new ConcurrentHashMap<>();
+    // AIDs of each patient's and each caregiver's appointments
+    private final Map<String, Set<Integer>> patientAppointments = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> caregiverAppointments = new ConcurrentHashMap<>();
+    private int nextAid = 1;
+    // patient -> waitlisted request, in the order the requests were made, guarded by the write lock
+    private final LinkedHashMap<String, WaitlistEntry> waitlist = new LinkedHashMap<>();
+    // write-behind log -> last sequence number applied from it
+    private final Map<String, Long> appliedSequences = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean patientExists(String username) {
+        return patients.containsKey(username);
+    }
+
+    @Override
+    public boolean caregiverExists(String username) {
+        return caregivers.containsKey(username);
+    }
+
+    @Override
+    public void savePatient(Patient patient) throws SQLException {
+        if (patients.putIfAbsent(patient.getUsername(), patient) != null) {
+            throw new SQLException("Patient " + patient.getUsername() + " already exists");
+        }
+    }
+
+    @Override
+    public Patient findPatient(String username) {
+        return patients.get(username);
+    }
+
+    @Override
+    public void saveCaregiver(Caregiver caregiver) throws SQLException {
+        if (caregivers.putIfAbsent(caregiver.getUsername(), caregiver) != null) {
+            throw new SQLException("Caregiver " + caregiver.getUsername() + " already exists");
+        }
+    }
+
+    @Override
+    public Caregiver findCaregiver(String username) {
+        return caregivers.get(username);
+    }
+
+    @Override
+    public List<String> getUsernames(boolean caregiver) {
+        return new ArrayList<>(caregiver ? caregivers.keySet() : patients.keySet());
+    }
+
+    @Override
+    public int addAvailability(String caregiver, List<Date> dates, int slots) throws SQLException {
+        if (!caregivers.containsKey(caregiver)) {
+            throw new SQLException("Caregiver " + caregiver + " does not exist");
+        }
+        int added = 0;
+        synchronized (writeLock) {
+            for (Date d : dates) {
+                LocalDate day = d.toLocalDate();
+                Map<String, Integer> available = availabilities.computeIfAbsent(day, k -> new ConcurrentHashMap<>());
+                int existing = available.getOrDefault(caregiver, 0);
+                int adding = slots & ~existing;
+                if (adding == 0) {
+                    continue;
+                }
+                available.put(caregiver, existing | adding);
+                for (int slot = 0; slot < Slot.PER_DAY; slot++) {
+                    if ((adding & (1 << slot)) != 0) {
+                        offer(day.atTime(Slot.start(slot)), caregiver);
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public Map<String, Integer> getAvailability(Date time) {
+        Map<String, Integer> available = availabilities.get(time.toLocalDate());
+        return available == null ? new HashMap<>() : new HashMap<>(available);
+    }
+
+    @Override
+    public LocalDateTime nextFreeSlot(LocalDateTime from) {
+        return freeSlots.ceilingKey(from);
+    }
+
+    // makes the caregiver a candidate for the slot, only called while holding the write lock
+    private void offer(LocalDateTime slot, String caregiver) {
+        assigner.addAvailable(slot, caregiver);
+        freeSlots.merge(slot, 1, Integer::sum);
+    }
+
+    @Override
+    public void saveVaccine(Vaccine vaccine) throws SQLException {
+        if (vaccines.putIfAbsent(vaccine.getVaccineName(), vaccine.getAvailableDoses()) != null) {
+            throw new SQLException("Vaccine " + vaccine.getVaccineName() + " already exists");
+        }
+    }
+
+    @Override
+    public Vaccine findVaccine(String vaccineName) throws SQLException {
+        Integer doses = vaccines.get(vaccineName);
+        return doses == null ? null : new Vaccine.VaccineBuilder(vaccineName, doses).build();
+    }
+
+    @Override
+    public int changeDoses(String vaccineName, int delta) {
+        synchronized (writeLock) {
+            Integer doses = vaccines.get(vaccineName);
+            if (doses == null || doses + delta < 0) {
+                throw new IllegalArgumentException("Not enough available doses!");
+            }
+            vaccines.put(vaccineName, doses + delta);
+            return doses + delta;
+        }
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> doses) throws SQLException {
+        synchronized (writeLock) {
+            // every total is checked before any is changed, so an overflow adds nothing
+            Map<String, Integer> totals = new HashMap<>();
+            for (String vaccineName : doses.keySet()) {
+                totals.put(vaccineName, vaccines.getOrDefault(vaccineName, 0));
+            }
+            sumDoses(totals, doses);
+            vaccines.putAll(totals);
+        }
+    }
+
+    // Adds the doses to the totals, throwing the arithmetic overflow error the database would if one does not fit
+    private static void sumDoses(Map<String, Integer> totals, Map<String, Integer> doses) throws SQLDataException {
+        for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+            try {
+                totals.merge(vaccine.getKey(), vaccine.getValue(), Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new SQLDataException("Too many doses of " + vaccine.getKey(), "22003", e);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() {
+        return new HashMap<>(vaccines);
+    }
+
+    @Override
+    public Appointment reserve(String patient, String vaccineName, Date time, int slot) {
+        LocalDate day = time.toLocalDate();
+        synchronized (writeLock) {
+            for (int aid : patientAppointments.getOrDefault(patient, Set.of())) {
+                if (appointments.get(aid).getTime().toLocalDate().equals(day)) {
+                    return new Appointment(Appointment.Status.ALREADY_BOOKED, patient, vaccineName, time, slot);
+                }
+            }
+            Integer doses = vaccines.get(vaccineName);
+            if (doses == null || doses < 1) {
+                return new Appointment(Appointment.Status.NO_DOSES, patient, vaccineName, time, slot);
+            }
+            LocalDateTime start = slot < 0 ? freeSlots.ceilingKey(day.atStartOfDay()) : day.atTime(Slot.start(slot));
+            if (start == null || !start.toLocalDate().equals(day) || !freeSlots.containsKey(start)) {
+                return new Appointment(Appointment.Status.NO_CAREGIVER, patient, vaccineName, time, slot);
+            }
+            int booked = Slot.of(start.toLocalTime());
+            String caregiver = assigner.assign(start);
+            freeSlots.computeIfPresent(start, (k, free) -> free == 1 ? null : free - 1);
+            availabilities.get(day).computeIfPresent(caregiver,
+                    (k, free) -> (free & ~(1 << booked)) == 0 ? null : free & ~(1 << booked));
+            vaccines.put(vaccineName, doses - 1);
+            Appointment appointment = new Appointment(nextAid++, caregiver, patient, vaccineName, time, booked);
+            appointments.put(appointment.getAid(), appointment);
+            patientAppointments.computeIfAbsent(patient, name -> ConcurrentHashMap.newKeySet())
+                    .add(appointment.getAid());
+            caregiverAppointments.computeIfAbsent(caregiver, name -> ConcurrentHashMap.newKeySet())
+                    .add(appointment.getAid());
+            return appointment;
+        }
+    }
+
+    @Override
+    public Appointment cancel(int aid, String username, boolean caregiver) {
+        synchronized (writeLock) {
+            Appointment canceled = appointments.get(aid);
+            if (canceled == null || !username.equals(caregiver ? canceled.getCaregiver() : canceled.getPatient())) {
+                return null;
+            }
+            appointments.remove(aid);
+            patientAppointments.get(canceled.getPatient()).remove(aid);
+            caregiverAppointments.get(canceled.getCaregiver()).remove(aid);
+            LocalDate day = canceled.getTime().toLocalDate();
+            Map<String, Integer> available = availabilities.computeIfAbsent(day, k -> new ConcurrentHashMap<>());
+            int free = available.getOrDefault(canceled.getCaregiver(), 0);
+            if ((free & (1 << canceled.getSlot())) == 0) {
+                available.put(canceled.getCaregiver(), free | (1 << canceled.getSlot()));
+                offer(day.atTime(canceled.getStartTime()), canceled.getCaregiver());
+            }
+            vaccines.merge(canceled.getVaccineName(), 1, Integer::sum);
+            return canceled;
+        }
+    }
+
+    @Override
+    public List<Appointment> getAppointments(String username, boolean caregiver, Date from, Date to,
+                                             Appointment after, int limit) {
+        Set<Integer> aids = (caregiver ? caregiverAppointments : patientAppointments).getOrDefault(username, Set.of());
+        ArrayList<Appointment> found = new ArrayList<>();
+        for (int aid : aids) {
+            Appointment appointment = appointments.get(aid);
+            if (appointment != null && (from == null || !appointment.getTime().before(from))
+                    && (to == null || !appointment.getTime().after(to))
+                    && (after == null || PAGE_ORDER.compare(appointment, after) > 0)) {
+                found.add(appointment);
+            }
+        }
+        found.sort(PAGE_ORDER);
+        return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+    }
+
+    @Override
+    public int joinWaitlist(String patient, String vaccineName, Date from, Date to) {
+        synchronized (writeLock) {
+            // a new request goes to the back, even if it replaces an earlier one
+            waitlist.remove(patient);
+            waitlist.put(patient, new WaitlistEntry(vaccineName, from.toLocalDate(), to.toLocalDate()));
+            return waitlist.size();
+        }
+    }
+
+    @Override
+    public boolean leaveWaitlist(String patient) {
+        synchronized (writeLock) {
+            return waitlist.remove(patient) != null;
+        }
+    }
+
+    @Override
+    public List<Appointment> assignWaitlist() {
+        ArrayList<Appointment> booked = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        synchronized (writeLock) {
+            Iterator<Map.Entry<String, WaitlistEntry>> waiting = waitlist.entrySet().iterator();
+            while (waiting.hasNext()) {
+                Map.Entry<String, WaitlistEntry> request = waiting.next();
+                WaitlistEntry entry = request.getValue();
+                if (entry.to.isBefore(today)) {
+                    waiting.remove();
+                    continue;
+                }
+                if (vaccines.getOrDefault(entry.vaccineName, 0) < 1) {
+                    continue;
+                }
+                for (LocalDateTime slot : freeSlots.subMap(entry.from.atStartOfDay(), true,
+                        entry.to.plusDays(1).atStartOfDay(), false).keySet()) {
+                    Appointment appointment = reserve(request.getKey(), entry.vaccineName,
+                            Date.valueOf(slot.toLocalDate()), Slot.of(slot.toLocalTime()));
+                    if (appointment.getStatus() == Appointment.Status.BOOKED) {
+                        booked.add(appointment);
+                        waiting.remove();
+                        break;
+                    }
+                    // otherwise the patient has an appointment that day already, the next slot may be on another
+                }
+            }
+        }
+        return booked;
+    }
+
+    @Override
+    public long getAppliedSequence(String log) {
+        return appliedSequences.getOrDefault(log, 0L);
+    }
+
+    @Override
+    public void applyWrites(String log, long sequence, List<QueuedWrite> writes) throws SQLException {
+        synchronized (writeLock) {
+            // the whole batch is checked before any of it is applied, so a bad write leaves nothing half done
+            // the way a rolled back transaction would
+            Map<String, Integer> totals = new HashMap<>(vaccines);
+            for (QueuedWrite write : writes) {
+                if (write.getKind() == QueuedWrite.Kind.DOSES) {
+                    sumDoses(totals, write.getDoses());
+                } else if (!caregivers.containsKey(write.getCaregiver())) {
+                    // the foreign key violation the database would report
+                    throw new SQLIntegrityConstraintViolationException("Caregiver " + write.getCaregiver() +
+                            " does not exist", "23000");
+                }
+            }
+            vaccines.putAll(totals);
+            for (QueuedWrite write : writes) {
+                if (write.getKind() == QueuedWrite.Kind.AVAILABILITY) {
+                    addAvailability(write.getCaregiver(), write.getDates(), write.getSlots());
+                }
+            }
+            appliedSequences.put(log, sequence);
+        }
+    }
+
+    private static class WaitlistEntry {
+        private final String vaccineName;
+        private final LocalDate from;
+        private final LocalDate to;
+
+        private WaitlistEntry(String vaccineName, LocalDate from, LocalDate to) {
+            this.vaccineName = vaccineName;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Slot;
+import scheduler.model.Vaccine;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Storage on the SQL Server database from create.sql, connections come from the ConnectionManager pool
+public class JdbcStorage implements Storage {
+
+    // number of rows sent to the database per round trip when uploading availability in bulk
+    private static final int UPLOAD_BATCH_SIZE = 1000;
+    // bounds of the SQL Server date type, used when a date filter is left open
+    private static final Date FIRST_DATE = Date.valueOf("0001-01-01");
+    private static final Date LAST_DATE = Date.valueOf("9999-12-31");
+
+    // Orders the caregivers available on a date by who should get the next appointment, following the same
+    // Assignment environment variable as the in-memory storage. The database is shared by every Scheduler
+    // process, so the loads are counted from Appointments in the same transaction rather than kept in memory.
+    // least_loaded only counts each caregiver's appointments on that date, so every count is a seek on the
+    // (Caregiver, Time) prefix of UX_Appointments_Caregiver_Time that reads at most one row per slot, however
+    // many appointments the caregiver has on other days.
+    private static final String CAREGIVER_ORDER = caregiverOrder(
+            System.getenv("Assignment") == null ? "least_loaded" : System.getenv("Assignment"));
+
+    // The whole booking runs as one batch inside one transaction: the double-booking check, the dose decrement,
+    // picking and removing a free caregiver slot (the requested one, or else the earliest), and the insert.
+    // The locking hints keep concurrent reservations from taking the same caregiver or a second slot for the
+    // same patient on the same day, and AIDs come from the AppointmentIDs sequence so they are unique across
+    // processes without scanning Appointments.
+    private static final String RESERVE =
+            "SET NOCOUNT ON; " +
+            "DECLARE @patient varchar(255) = ?, @vaccine varchar(255) = ?, @time date = ?, @slot smallint = ?; " +
+            "DECLARE @caregiver varchar(255), @aid int, @booked smallint; " +
+            "IF EXISTS (SELECT 1 FROM Appointments WITH (UPDLOCK, HOLDLOCK) " +
+            "           WHERE Patient = @patient AND Time = @time) " +
+            "    SELECT 1 AS Status, NULL AS AID, NULL AS Caregiver, NULL AS Slot; " +
+            "ELSE BEGIN " +
+            "    UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = @vaccine AND Doses >= 1; " +
+            "    IF @@ROWCOUNT = 0 " +
+            "        SELECT 2 AS Status, NULL AS AID, NULL AS Caregiver, NULL AS Slot; " +
+            "    ELSE BEGIN " +
+            "        SELECT TOP 1 @caregiver = a.Username, @booked = a.Slot " +
+            "        FROM Availabilities a WITH (UPDLOCK, READPAST) " +
+            "        WHERE a.Time = @time AND (@slot IS NULL OR a.Slot = @slot) " +
+            "        ORDER BY a.Slot, " + CAREGIVER_ORDER + "; " +
+            "        IF @caregiver IS NULL " +
+            "            SELECT 3 AS Status, NULL AS AID, NULL AS Caregiver, NULL AS Slot; " +
+            "        ELSE BEGIN " +
+            "            DELETE FROM Availabilities WHERE Time = @time AND Slot = @booked AND Username = @caregiver; " +
+            "            SET @aid = NEXT VALUE FOR AppointmentIDs; " +
+            "            INSERT INTO Appointments (AID, Caregiver, Patient, Vaccine, Time, Slot) " +
+            "            VALUES (@aid, @caregiver, @patient, @vaccine, @time, @booked); " +
+            "            SELECT 0 AS Status, @aid AS AID, @caregiver AS Caregiver, @booked AS Slot; " +
+            "        END " +
+            "    END " +
+            "END";
+
+    // Deletes the appointment if it is the user's and gives its caregiver slot and dose back in one transaction
+    private static final String CANCEL =
+            "SET NOCOUNT ON; " +
+            "DECLARE @canceled TABLE (Caregiver varchar(255), Patient varchar(255), Vaccine varchar(255), Time date, " +
+            "                         Slot smallint); " +
+            "DELETE FROM Appointments " +
+            "OUTPUT deleted.Caregiver, deleted.Patient, deleted.Vaccine, deleted.Time, deleted.Slot INTO @canceled " +
+            "WHERE AID = ? AND (Caregiver = ? OR Patient = ?); " +
+            "INSERT INTO Availabilities (Time, Slot, Username) SELECT c.Time, c.Slot, c.Caregiver FROM @canceled c " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Availabilities a " +
+            "                  WHERE a.Time = c.Time AND a.Slot = c.Slot AND a.Username = c.Caregiver); " +
+            "UPDATE v SET Doses = v.Doses + 1 FROM Vaccines v JOIN @canceled c ON v.Name = c.Vaccine; " +
+            "SELECT Caregiver, Patient, Vaccine, Time, Slot FROM @canceled";
+
+    // Books waitlisted patients first come first served in one transaction. For each request whose vaccine has
+    // doses it takes the earliest free slot in the request's range on a day the patient has no appointment
+    // yet, the same way RESERVE does. The cursor is a snapshot that locks nothing, so before booking a request
+    // the batch claims it by deleting it: a request another run is booking, or that its patient just left, is
+    // skipped over by READPAST or already gone, and @@ROWCOUNT = 0 moves on to the next one.
+    private static final String ASSIGN_WAITLIST =
+            "SET NOCOUNT ON; " +
+            "DECLARE @booked TABLE (AID int, Caregiver varchar(255), Patient varchar(255), Vaccine varchar(255), " +
+            "                       Time date, Slot smallint); " +
+            "DECLARE @id int, @patient varchar(255), @vaccine varchar(255), @from date, @to date; " +
+            "DECLARE @caregiver varchar(255), @time date, @slot smallint, @aid int; " +
+            "DELETE FROM Waitlist WHERE ToTime < CAST(GETDATE() AS date); " +
+            "DECLARE waiting CURSOR LOCAL STATIC READ_ONLY FOR " +
+            "    SELECT ID, Patient, Vaccine, FromTime, ToTime FROM Waitlist ORDER BY ID; " +
+            "OPEN waiting; " +
+            "FETCH NEXT FROM waiting INTO @id, @patient, @vaccine, @from, @to; " +
+            "WHILE @@FETCH_STATUS = 0 BEGIN " +
+            "    SET @caregiver = NULL; " +
+            "    IF EXISTS (SELECT 1 FROM Vaccines WITH (UPDLOCK) WHERE Name = @vaccine AND Doses >= 1) " +
+            "        SELECT TOP 1 @caregiver = a.Username, @time = a.Time, @slot = a.Slot " +
+            "        FROM Availabilities a WITH (UPDLOCK, READPAST) " +
+            "        WHERE a.Time >= @from AND a.Time <= @to AND NOT EXISTS (SELECT 1 FROM Appointments p " +
+            "                                                     WHERE p.Patient = @patient AND p.Time = a.Time) " +
+            "        ORDER BY a.Time, a.Slot, " + CAREGIVER_ORDER + "; " +
+            "    IF @caregiver IS NOT NULL BEGIN " +
+            "        DELETE FROM Waitlist WITH (READPAST) WHERE ID = @id; " +
+            "        IF @@ROWCOUNT = 1 BEGIN " +
+            "            UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = @vaccine; " +
+            "            DELETE FROM Availabilities WHERE Time = @time AND Slot = @slot AND Username = @caregiver; " +
+            "            SET @aid = NEXT VALUE FOR AppointmentIDs; " +
+            "            INSERT INTO Appointments (AID, Caregiver, Patient, Vaccine, Time, Slot) " +
+            "            VALUES (@aid, @caregiver, @patient, @vaccine, @time, @slot); " +
+            "            INSERT INTO @booked VALUES (@aid, @caregiver, @patient, @vaccine, @time, @slot); " +
+            "        END " +
+            "    END " +
+            "    FETCH NEXT FROM waiting INTO @id, @patient, @vaccine, @from, @to; " +
+            "END " +
+            "CLOSE waiting; " +
+            "DEALLOCATE waiting; " +
+            "SELECT AID, Caregiver, Patient, Vaccine, Time, Slot FROM @booked";
+
+    private static String caregiverOrder(String strategy) {
+        switch (strategy.toLowerCase()) {
+            case "least_loaded":
+                return "(SELECT COUNT(*) FROM Appointments p WHERE p.Caregiver = a.Username AND p.Time = a.Time), " +
+                        "NEWID()";
+            case "round_robin":
+                // caregivers without appointments that day have a NULL last AID, which sorts first
+                return "(SELECT MAX(p.AID) FROM Appointments p WHERE p.Caregiver = a.Username AND p.Time = a.Time), " +
+                        "a.Username";
+            case "random":
+                return "NEWID()";
+            default:
+                throw new IllegalArgumentException("Unknown assignment strategy " + strategy);
+        }
+    }
+
+    @Override
+    public boolean patientExists(String username) throws SQLException {
+        return usernameExists(username, "SELECT 1 FROM Patients WHERE Username = ?");
+    }
+
+    @Override
+    public boolean caregiverExists(String username) throws SQLException {
+        return usernameExists(username, "SELECT 1 FROM Caregivers WHERE Username = ?");
+    }
+
+    private boolean usernameExists(String username, String selectUsername) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            PreparedStatement statement = con.prepareStatement(selectUsername);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void savePatient(Patient patient) throws SQLException {
+        saveUser("INSERT INTO Patients (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)",
+                patient.getUsername(), patient.getSalt(), patient.getHash(), patient.getHashParams());
+    }
+
+    @Override
+    public void saveCaregiver(Caregiver caregiver) throws SQLException {
+        saveUser("INSERT INTO Caregivers (Username, Salt, Hash, HashParams) VALUES (?, ?, ?, ?)",
+                caregiver.getUsername(), caregiver.getSalt(), caregiver.getHash(), caregiver.getHashParams());
+    }
+
+    private void saveUser(String addUser, String username, byte[] salt, byte[] hash, String hashParams)
+            throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            PreparedStatement statement = con.prepareStatement(addUser);
+            statement.setString(1, username);
+            statement.setBytes(2, salt);
+            statement.setBytes(3, hash);
+            statement.setString(4, hashParams);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Patient findPatient(String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String getPatient = "SELECT Salt, Hash, HashParams FROM Patients WHERE Username = ?";
+        try {
+            PreparedStatement statement = con.prepareStatement(getPatient);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return new Patient.PatientBuilder(username, resultSet.getBytes("Salt"), resultSet.getBytes("Hash"),
+                    resultSet.getString("HashParams")).build();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Caregiver findCaregiver(String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String getCaregiver = "SELECT Salt, Hash, HashParams FROM Caregivers WHERE Username = ?";
+        try {
+            PreparedStatement statement = con.prepareStatement(getCaregiver);
+            statement.setString(1, username);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return new Caregiver.CaregiverBuilder(username, resultSet.getBytes("Salt"), resultSet.getBytes("Hash"),
+                    resultSet.getString("HashParams")).build();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<String> getUsernames(boolean caregiver) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String getUsernames = caregiver ? "SELECT Username FROM Caregivers" : "SELECT Username FROM Patients";
+        try {
+            PreparedStatement statement = con.prepareStatement(getUsernames);
+            statement.setFetchSize(1000);
+            ResultSet resultSet = statement.executeQuery();
+            List<String> usernames = new ArrayList<>();
+            while (resultSet.next()) {
+                usernames.add(resultSet.getString("Username"));
+            }
+            return usernames;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public int addAvailability(String caregiver, List<Date> dates, int slots) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            int added = insertAvailability(con, caregiver, dates, slots);
+            con.commit();
+            return added;
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // Sends the availability rows in batches of UPLOAD_BATCH_SIZE, the caller commits.
+    // Returns the number of rows that were not there yet.
+    private static int insertAvailability(Connection con, String caregiver, List<Date> dates, int slots)
+            throws SQLException {
+        String addAvailability = "INSERT INTO Availabilities (Time, Slot, Username) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Slot = ? AND Username = ?)";
+        PreparedStatement statement = con.prepareStatement(addAvailability);
+        int added = 0;
+        int batched = 0;
+        for (Date d : dates) {
+            for (int slot = 0; slot < Slot.PER_DAY; slot++) {
+                if ((slots & (1 << slot)) == 0) {
+                    continue;
+                }
+                statement.setDate(1, d);
+                statement.setInt(2, slot);
+                statement.setString(3, caregiver);
+                statement.setDate(4, d);
+                statement.setInt(5, slot);
+                statement.setString(6, caregiver);
+                statement.addBatch();
+                if (++batched == UPLOAD_BATCH_SIZE) {
+                    added += countUpdates(statement.executeBatch());
+                    batched = 0;
+                }
+            }
+        }
+        if (batched > 0) {
+            added += countUpdates(statement.executeBatch());
+        }
+        return added;
+    }
+
+    private static int countUpdates(int[] updateCounts) {
+        int count = 0;
+        for (int updated : updateCounts) {
+            if (updated > 0) {
+                count += updated;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Integer> getAvailability(Date time) throws SQLException {
+        // always read from the primary, the result is cached for every session (see AvailabilityCache) and
+        // a lagging replica would be cached for sessions that just wrote
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String getSchedule = "SELECT Username, Slot FROM Availabilities WHERE Time = ?";
+        try {
+            PreparedStatement statement = con.prepareStatement(getSchedule);
+            statement.setDate(1, time);
+            ResultSet results = statement.executeQuery();
+            HashMap<String, Integer> caregivers = new HashMap<>();
+            while (results.next()) {
+                caregivers.merge(results.getString("Username"), 1 << results.getInt("Slot"), (a, b) -> a | b);
+            }
+            return caregivers;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public LocalDateTime nextFreeSlot(LocalDateTime from) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(true);
+        Connection con = cm.createConnection();
+
+        // a seek on the (Time, Slot, Username) primary key
+        String nextSlot = "SELECT TOP 1 Time, Slot FROM Availabilities " +
+                "WHERE Time > ? OR (Time = ? AND Slot >= ?) ORDER BY Time, Slot";
+        try {
+            PreparedStatement statement = con.prepareStatement(nextSlot);
+            statement.setDate(1, Date.valueOf(from.toLocalDate()));
+            statement.setDate(2, Date.valueOf(from.toLocalDate()));
+            statement.setInt(3, Slot.firstFrom(from.toLocalTime()));
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return resultSet.getDate("Time").toLocalDate().atTime(Slot.start(resultSet.getInt("Slot")));
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void saveVaccine(Vaccine vaccine) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String addDoses = "INSERT INTO Vaccines VALUES (?, ?)";
+        try {
+            PreparedStatement statement = con.prepareStatement(addDoses);
+            statement.setString(1, vaccine.getVaccineName());
+            statement.setInt(2, vaccine.getAvailableDoses());
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Vaccine findVaccine(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        String getVaccine = "SELECT Doses FROM Vaccines WHERE Name = ?";
+        try {
+            PreparedStatement statement = con.prepareStatement(getVaccine);
+            statement.setString(1, vaccineName);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                return null;
+            }
+            return new Vaccine.VaccineBuilder(vaccineName, resultSet.getInt("Doses")).build();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public int changeDoses(String vaccineName, int delta) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        // a single conditional statement, so concurrent updates never overwrite each other
+        String changeDoses = "UPDATE Vaccines SET Doses = Doses + ? OUTPUT inserted.Doses " +
+                "WHERE Name = ? AND Doses + ? >= 0";
+        try {
+            PreparedStatement statement = con.prepareStatement(changeDoses);
+            statement.setInt(1, delta);
+            statement.setString(2, vaccineName);
+            statement.setInt(3, delta);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return resultSet.getInt(1);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        throw new IllegalArgumentException("Not enough available doses!");
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> doses) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            upsertDoses(con, doses);
+            con.commit();
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the upserts are sent as a single batch, so the cost doesn't grow with round trips per vaccine
+    private static void upsertDoses(Connection con, Map<String, Integer> doses) throws SQLException {
+        String upsertDoses = "MERGE Vaccines WITH (HOLDLOCK) AS v " +
+                "USING (SELECT ? AS Name, ? AS Doses) AS s ON v.Name = s.Name " +
+                "WHEN MATCHED THEN UPDATE SET Doses = v.Doses + s.Doses " +
+                "WHEN NOT MATCHED THEN INSERT (Name, Doses) VALUES (s.Name, s.Doses);";
+        PreparedStatement statement = con.prepareStatement(upsertDoses);
+        for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+            statement.setString(1, vaccine.getKey());
+            statement.setInt(2, vaccine.getValue());
+            statement.addBatch();
+        }
+        statement.executeBatch();
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() throws SQLException {
+        // always read from the primary, cached for every session like getAvailability
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            PreparedStatement statement = con.prepareStatement("SELECT Name, Doses FROM Vaccines");
+            ResultSet results = statement.executeQuery();
+            HashMap<String, Integer> vaccines = new HashMap<>();
+            while (results.next()) {
+                vaccines.put(results.getString("Name"), results.getInt("Doses"));
+            }
+            return vaccines;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Appointment reserve(String patient, String vaccineName, Date time, int slot) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = con.prepareStatement(RESERVE);
+            statement.setString(1, patient);
+            statement.setString(2, vaccineName);
+            statement.setDate(3, time);
+            if (slot < 0) {
+                statement.setNull(4, Types.SMALLINT);
+            } else {
+                statement.setInt(4, slot);
+            }
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            Appointment.Status status = Appointment.Status.values()[resultSet.getInt("Status")];
+            if (status != Appointment.Status.BOOKED) {
+                con.rollback();
+                return new Appointment(status, patient, vaccineName, time, slot);
+            }
+            Appointment appointment = new Appointment(resultSet.getInt("AID"), resultSet.getString("Caregiver"),
+                    patient, vaccineName, time, resultSet.getInt("Slot"));
+            con.commit();
+            return appointment;
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Appointment cancel(int aid, String username, boolean caregiver) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = con.prepareStatement(CANCEL);
+            statement.setInt(1, aid);
+            // the other column is compared with NULL, which never matches
+            statement.setString(2, caregiver ? username : null);
+            statement.setString(3, caregiver ? null : username);
+            ResultSet resultSet = statement.executeQuery();
+            Appointment canceled = null;
+            if (resultSet.next()) {
+                canceled = new Appointment(aid, resultSet.getString("Caregiver"), resultSet.getString("Patient"),
+                        resultSet.getString("Vaccine"), resultSet.getDate("Time"), resultSet.getInt("Slot"));
+            }
+            con.commit();
+            return canceled;
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<Appointment> getAppointments(String username, boolean caregiver, Date from, Date to,
+                                             Appointment after, int limit) throws SQLException {
+        ConnectionManager cm = new ConnectionManager(true);
+        Connection con = cm.createConnection();
+
+        // keyset pagination on (Time, Slot, AID), served in order by the (Patient, Time) and
+        // (Caregiver, Time, Slot) indexes
+        String findAppointments = "SELECT TOP (?) AID, Caregiver, Patient, Vaccine, Time, Slot FROM Appointments " +
+                "WHERE " + (caregiver ? "Caregiver" : "Patient") + " = ? AND Time >= ? AND Time <= ? " +
+                "AND (Time > ? OR (Time = ? AND (Slot > ? OR (Slot = ? AND AID > ?)))) ORDER BY Time, Slot, AID";
+        try {
+            PreparedStatement statement = con.prepareStatement(findAppointments);
+            statement.setFetchSize(limit);
+            statement.setInt(1, limit);
+            statement.setString(2, username);
+            statement.setDate(3, from == null ? FIRST_DATE : from);
+            statement.setDate(4, to == null ? LAST_DATE : to);
+            statement.setDate(5, after == null ? FIRST_DATE : after.getTime());
+            statement.setDate(6, after == null ? FIRST_DATE : after.getTime());
+            statement.setInt(7, after == null ? Integer.MIN_VALUE : after.getSlot());
+            statement.setInt(8, after == null ? Integer.MIN_VALUE : after.getSlot());
+            statement.setInt(9, after == null ? Integer.MIN_VALUE : after.getAid());
+            ResultSet results = statement.executeQuery();
+            ArrayList<Appointment> appointments = new ArrayList<>();
+            while (results.next()) {
+                appointments.add(new Appointment(results.getInt("AID"), results.getString("Caregiver"),
+                        results.getString("Patient"), results.getString("Vaccine"), results.getDate("Time"),
+                        results.getInt("Slot")));
+            }
+            return appointments;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public int joinWaitlist(String patient, String vaccineName, Date from, Date to) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        // a new request goes to the back, even if it replaces an earlier one
+        String joinWaitlist = "SET NOCOUNT ON; " +
+                "DECLARE @patient varchar(255) = ?; " +
+                "DELETE FROM Waitlist WHERE Patient = @patient; " +
+                "INSERT INTO Waitlist (Patient, Vaccine, FromTime, ToTime) VALUES (@patient, ?, ?, ?); " +
+                "SELECT COUNT(*) AS Position FROM Waitlist WHERE ID <= SCOPE_IDENTITY()";
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = con.prepareStatement(joinWaitlist);
+            statement.setString(1, patient);
+            statement.setString(2, vaccineName);
+            statement.setDate(3, from);
+            statement.setDate(4, to);
+            ResultSet resultSet = statement.executeQuery();
+            resultSet.next();
+            int position = resultSet.getInt("Position");
+            con.commit();
+            return position;
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public boolean leaveWaitlist(String patient) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            PreparedStatement statement = con.prepareStatement("DELETE FROM Waitlist WHERE Patient = ?");
+            statement.setString(1, patient);
+            return statement.executeUpdate() > 0;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<Appointment> assignWaitlist() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            PreparedStatement statement = con.prepareStatement(ASSIGN_WAITLIST);
+            ResultSet results = statement.executeQuery();
+            ArrayList<Appointment> booked = new ArrayList<>();
+            while (results.next()) {
+                booked.add(new Appointment(results.getInt("AID"), results.getString("Caregiver"),
+                        results.getString("Patient"), results.getString("Vaccine"), results.getDate("Time"),
+                        results.getInt("Slot")));
+            }
+            con.commit();
+            return booked;
+        } catch (SQLException e) {
+            throw rollback(con, e);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public long getAppliedSequence(String log) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            PreparedStatement statement = con.prepareStatement("SELECT Seq FROM WriteLog WHERE Name = ?");
+            statement.setString(1, log);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong("Seq") : 0;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void applyWrites(String log, long sequence, List<QueuedWrite> writes) throws SQLException {
+        // additions to the same vaccine are summed up so each vaccine is upserted once per batch
+        HashMap<String, Integer> doses = new HashMap<>();
+        for (QueuedWrite write : writes) {
+            if (write.getKind() == QueuedWrite.Kind.DOSES) {
+                for (Map.Entry<String, Integer> vaccine : write.getDoses().entrySet()) {
+                    try {
+                        doses.merge(vaccine.getKey(), vaccine.getValue(), Math::addExact);
+                    } catch (ArithmeticException e) {
+                        throw new SQLDataException("Too many doses of " + vaccine.getKey(), "22003", e);
+                    }
+                }
+            }
+        }
+        String recordApplied = "MERGE WriteLog WITH (HOLDLOCK) AS w USING (SELECT ? AS Name, ? AS Seq) AS s " +
+                "ON w.Name = s.Name WHEN MATCHED THEN UPDATE SET Seq = s.Seq " +
+                "WHEN NOT MATCHED THEN INSERT (Name, Seq) VALUES (s.Name, s.Seq);";
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+
+        try {
+            con.setAutoCommit(false);
+            upsertDoses(con, doses);
+            for (QueuedWrite write : writes) {
+                if (write.getKind() == QueuedWrite.Kind.AVAILABILITY) {
+                    insertAvailability(con, write.getCaregiver(), write.getDates(), write.getSlots());
+                }
+            }
+            PreparedStatement statement = con.prepareStatement(recordApplied);
+            statement.setString(1, log);
+            statement.setLong(2, sequence);
+            statement.executeUpdate();
+            con.commit();
+        } catch (SQLException e) {
+            // the SQLSTATE tells WriteBehindStorage whether retrying can help
+            throw new SQLException("Could not apply queued writes", e.getSQLState(), e.getErrorCode(),
+                    rollback(con, e));
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // Rolls back the transaction that failed with e and returns e to be thrown. A rollback that fails too is
+    // added to e as suppressed, so it does not hide why the transaction failed.
+    private static SQLException rollback(Connection con, SQLException e) {
+        try {
+            con.rollback();
+        } catch (SQLException rollbackFailed) {
+            e.addSuppressed(rollbackFailed);
+        }
+        return e;
+    }
+}
@@ -0,0 +1,167 @@
+package scheduler.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A write accepted by WriteBehindStorage but maybe not applied yet. Each one is a line of the write-behind
+// log: the sequence number, the kind, its arguments and a CRC32 of the rest of the line, separated by tabs.
+// Tabs, line breaks and backslashes in names are escaped with a backslash, so any name fits on the line.
+public class QueuedWrite {
+
+    public enum Kind {
+        DOSES,
+        AVAILABILITY
+    }
+
+    private final long sequence;
+    private final Kind kind;
+    // vaccine -> doses to add
+    private final Map<String, Integer> doses;
+    private final String caregiver;
+    private final List<Date> dates;
+    private final int slots;
+
+    private QueuedWrite(long sequence, Kind kind, Map<String, Integer> doses, String caregiver, List<Date> dates,
+                        int slots) {
+        this.sequence = sequence;
+        this.kind = kind;
+        this.doses = doses;
+        this.caregiver = caregiver;
+        this.dates = dates;
+        this.slots = slots;
+    }
+
+    public static QueuedWrite doses(long sequence, Map<String, Integer> doses) {
+        return new QueuedWrite(sequence, Kind.DOSES, new LinkedHashMap<>(doses), null, null, 0);
+    }
+
+    public static QueuedWrite availability(long sequence, String caregiver, List<Date> dates, int slots) {
+        return new QueuedWrite(sequence, Kind.AVAILABILITY, null, caregiver, new ArrayList<>(dates), slots);
+    }
+
+    // Getters
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Map<String, Integer> getDoses() {
+        return doses;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public List<Date> getDates() {
+        return dates;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    // DOSES lines list vaccine and doses pairs, AVAILABILITY lines the caregiver, the slots and the dates
+    public String toLine() {
+        StringBuilder line = new StringBuilder().append(sequence).append('\t').append(kind);
+        if (kind == Kind.DOSES) {
+            for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+                line.append('\t');
+                escape(vaccine.getKey(), line);
+                line.append('\t').append(vaccine.getValue());
+            }
+        } else {
+            line.append('\t');
+            escape(caregiver, line);
+            line.append('\t').append(slots);
+            for (Date d : dates) {
+                line.append('\t').append(d);
+            }
+        }
+        String checksum = checksum(line);
+        return line.append('\t').append(checksum).toString();
+    }
+
+    // Returns the write on the line, or null if the line is not a complete write, like the last line
+    // of a log that was cut off by a crash
+    public static QueuedWrite parse(String line) {
+        int end = line.lastIndexOf('\t');
+        if (end < 0 || !line.substring(end + 1).equals(checksum(line.substring(0, end)))) {
+            return null;
+        }
+        String[] fields = line.substring(0, end).split("\t");
+        try {
+            long sequence = Long.parseLong(fields[0]);
+            if (fields[1].equals(Kind.DOSES.name()) && fields.length % 2 == 0) {
+                LinkedHashMap<String, Integer> doses = new LinkedHashMap<>();
+                for (int i = 2; i < fields.length; i += 2) {
+                    doses.put(unescape(fields[i]), Integer.parseInt(fields[i + 1]));
+                }
+                return doses(sequence, doses);
+            }
+            if (fields[1].equals(Kind.AVAILABILITY.name()) && fields.length >= 4) {
+                ArrayList<Date> dates = new ArrayList<>();
+                for (int i = 4; i < fields.length; i++) {
+                    dates.add(Date.valueOf(fields[i]));
+                }
+                return availability(sequence, unescape(fields[2]), dates, Integer.parseInt(fields[3]));
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // falls through to null, NumberFormatException is an IllegalArgumentException
+        }
+        return null;
+    }
+
+    private static void escape(String name, StringBuilder line) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder name = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 == field.length()) {
+                name.append(c);
+                continue;
+            }
+            char escaped = field.charAt(++i);
+            name.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+        }
+        return name.toString();
+    }
+
+    private static String checksum(CharSequence content) {
+        CRC32 crc = new CRC32();
+        crc.update(content.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -0,0 +1,125 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Vaccine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Everything the scheduler persists goes through this interface, so the models and commands work the same
+// against SQL Server or the in-memory engine. Set the Storage environment variable to "memory" for the latter.
+public interface Storage {
+
+    static Storage get() {
+        return Holder.INSTANCE;
+    }
+
+    boolean patientExists(String username) throws SQLException;
+
+    boolean caregiverExists(String username) throws SQLException;
+
+    void savePatient(Patient patient) throws SQLException;
+
+    // Returns the stored patient record, or null if there is no such patient
+    Patient findPatient(String username) throws SQLException;
+
+    void saveCaregiver(Caregiver caregiver) throws SQLException;
+
+    // Returns the stored caregiver record, or null if there is no such caregiver
+    Caregiver findCaregiver(String username) throws SQLException;
+
+    // Returns the usernames of every caregiver, or of every patient
+    List<String> getUsernames(boolean caregiver) throws SQLException;
+
+    // Adds the caregiver's availability in the given slots (see Slot) on all dates at once, skipping slots
+    // already uploaded. Returns the number of slots that were added, or -1 if the upload was queued to be
+    // written later and the number is not known yet.
+    int addAvailability(String caregiver, List<Date> dates, int slots) throws SQLException;
+
+    // Returns the caregivers available on the given date, each with its free slots
+    Map<String, Integer> getAvailability(Date time) throws SQLException;
+
+    // Returns the start of the earliest slot at or after the given time that a caregiver is free in,
+    // or null if there is none
+    LocalDateTime nextFreeSlot(LocalDateTime from) throws SQLException;
+
+    void saveVaccine(Vaccine vaccine) throws SQLException;
+
+    // Returns the stored vaccine, or null if there is no such vaccine
+    Vaccine findVaccine(String vaccineName) throws SQLException;
+
+    // Atomically applies delta to the doses and returns the new count,
+    // throws IllegalArgumentException if the count would become negative
+    int changeDoses(String vaccineName, int delta) throws SQLException;
+
+    // Adds doses to many vaccines at once, creating the vaccines that don't exist yet.
+    // The doses may be queued to be written later, see WriteBehindStorage.
+    void addDoses(Map<String, Integer> doses) throws SQLException;
+
+    // Returns every vaccine name with its available doses
+    Map<String, Integer> getVaccines() throws SQLException;
+
+    // Books a caregiver and a dose for the patient atomically, see Appointment.Status for the outcomes.
+    // slot is the slot to book on the date, or -1 for the earliest one with a free caregiver.
+    Appointment reserve(String patient, String vaccineName, Date time, int slot) throws SQLException;
+
+    // Removes the appointment if it belongs to the caregiver or patient with the given username, making its
+    // caregiver and dose available again. Returns the canceled appointment, or null if the user has no such
+    // appointment.
+    Appointment cancel(int aid, String username, boolean caregiver) throws SQLException;
+
+    // Returns up to limit appointments of the caregiver or patient with the given username, ordered by date,
+    // slot and AID. from and to optionally bound the dates, and after is the last appointment of the previous page
+    // (null for the first page) so each page starts where the last one ended without rescanning it.
+    List<Appointment> getAppointments(String username, boolean caregiver, Date from, Date to, Appointment after,
+                                      int limit) throws SQLException;
+
+    // Puts the patient on the waitlist for an appointment between from and to, replacing the patient's
+    // earlier request if there is one. Returns the patient's position on the waitlist.
+    int joinWaitlist(String patient, String vaccineName, Date from, Date to) throws SQLException;
+
+    // Takes the patient off the waitlist, returns false if the patient was not on it
+    boolean leaveWaitlist(String patient) throws SQLException;
+
+    // Books every waitlisted patient it can, first come first served, in one transaction: each gets the
+    // earliest free slot in its date range on a day it has no appointment yet, if its vaccine has doses.
+    // Requests whose range is over are dropped. Returns the appointments that were booked.
+    List<Appointment> assignWaitlist() throws SQLException;
+
+    // Returns the sequence number of the last write applied from the named write-behind log, 0 if none was
+    long getAppliedSequence(String log) throws SQLException;
+
+    // Applies writes from the named write-behind log in one transaction, together with recording sequence
+    // as the last one applied from it
+    void applyWrites(String log, long sequence, List<QueuedWrite> writes) throws SQLException;
+
+    // lazily picks the implementation the first time storage is used, every operation is timed.
+    // Set the WriteBehindLog environment variable to a file to queue dose additions and availability
+    // uploads there instead of waiting for them to be written.
+    class Holder {
+        private static final Storage INSTANCE = create();
+
+        private static Storage create() {
+            Storage storage = new TimedStorage(
+                    "memory".equalsIgnoreCase(System.getenv("Storage")) ? new InMemoryStorage() : new JdbcStorage());
+            String log = System.getenv("WriteBehindLog");
+            if (log == null) {
+                return storage;
+            }
+            try {
+                return new WriteBehindStorage(storage, Paths.get(log));
+            } catch (IOException | SQLException e) {
+                System.out.println("Could not open the write-behind log " + log + ", writes are not queued");
+                e.printStackTrace();
+                return storage;
+            }
+        }
+    }
+}
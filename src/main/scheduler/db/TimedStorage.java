@@ -0,0 +1,177 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Vaccine;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Wraps a Storage to record the latency and failures of every operation in Metrics.
+// Each operation is a single statement or batch on the JDBC storage, so this times the SQL as well.
+// Operations that write also tell ConnectionManager, so the session reads its own writes from the primary.
+public class TimedStorage implements Storage {
+
+    private final Storage storage;
+
+    public TimedStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean patientExists(String username) throws SQLException {
+        return time("patientExists", () -> storage.patientExists(username));
+    }
+
+    @Override
+    public boolean caregiverExists(String username) throws SQLException {
+        return time("caregiverExists", () -> storage.caregiverExists(username));
+    }
+
+    @Override
+    public void savePatient(Patient patient) throws SQLException {
+        timeWrite("savePatient", () -> {
+            storage.savePatient(patient);
+            return null;
+        });
+    }
+
+    @Override
+    public Patient findPatient(String username) throws SQLException {
+        return time("findPatient", () -> storage.findPatient(username));
+    }
+
+    @Override
+    public void saveCaregiver(Caregiver caregiver) throws SQLException {
+        timeWrite("saveCaregiver", () -> {
+            storage.saveCaregiver(caregiver);
+            return null;
+        });
+    }
+
+    @Override
+    public Caregiver findCaregiver(String username) throws SQLException {
+        return time("findCaregiver", () -> storage.findCaregiver(username));
+    }
+
+    @Override
+    public List<String> getUsernames(boolean caregiver) throws SQLException {
+        return time("getUsernames", () -> storage.getUsernames(caregiver));
+    }
+
+    @Override
+    public int addAvailability(String caregiver, List<Date> dates, int slots) throws SQLException {
+        return timeWrite("addAvailability", () -> storage.addAvailability(caregiver, dates, slots));
+    }
+
+    @Override
+    public Map<String, Integer> getAvailability(Date time) throws SQLException {
+        return time("getAvailability", () -> storage.getAvailability(time));
+    }
+
+    @Override
+    public LocalDateTime nextFreeSlot(LocalDateTime from) throws SQLException {
+        return time("nextFreeSlot", () -> storage.nextFreeSlot(from));
+    }
+
+    @Override
+    public void saveVaccine(Vaccine vaccine) throws SQLException {
+        timeWrite("saveVaccine", () -> {
+            storage.saveVaccine(vaccine);
+            return null;
+        });
+    }
+
+    @Override
+    public Vaccine findVaccine(String vaccineName) throws SQLException {
+        return time("findVaccine", () -> storage.findVaccine(vaccineName));
+    }
+
+    @Override
+    public int changeDoses(String vaccineName, int delta) throws SQLException {
+        return timeWrite("changeDoses", () -> storage.changeDoses(vaccineName, delta));
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> doses) throws SQLException {
+        timeWrite("addDoses", () -> {
+            storage.addDoses(doses);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() throws SQLException {
+        return time("getVaccines", storage::getVaccines);
+    }
+
+    @Override
+    public Appointment reserve(String patient, String vaccineName, Date time, int slot) throws SQLException {
+        return timeWrite("reserve", () -> storage.reserve(patient, vaccineName, time, slot));
+    }
+
+    @Override
+    public Appointment cancel(int aid, String username, boolean caregiver) throws SQLException {
+        return timeWrite("cancel", () -> storage.cancel(aid, username, caregiver));
+    }
+
+    @Override
+    public List<Appointment> getAppointments(String username, boolean caregiver, Date from, Date to,
+                                             Appointment after, int limit) throws SQLException {
+        return time("getAppointments", () -> storage.getAppointments(username, caregiver, from, to, after, limit));
+    }
+
+    @Override
+    public int joinWaitlist(String patient, String vaccineName, Date from, Date to) throws SQLException {
+        return timeWrite("joinWaitlist", () -> storage.joinWaitlist(patient, vaccineName, from, to));
+    }
+
+    @Override
+    public boolean leaveWaitlist(String patient) throws SQLException {
+        return timeWrite("leaveWaitlist", () -> storage.leaveWaitlist(patient));
+    }
+
+    @Override
+    public List<Appointment> assignWaitlist() throws SQLException {
+        return timeWrite("assignWaitlist", storage::assignWaitlist);
+    }
+
+    @Override
+    public long getAppliedSequence(String log) throws SQLException {
+        return time("getAppliedSequence", () -> storage.getAppliedSequence(log));
+    }
+
+    @Override
+    public void applyWrites(String log, long sequence, List<QueuedWrite> writes) throws SQLException {
+        timeWrite("applyWrites", () -> {
+            storage.applyWrites(log, sequence, writes);
+            return null;
+        });
+    }
+
+    private static <T> T time(String operation, Operation<T> call) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return call.run();
+        } catch (SQLException | RuntimeException e) {
+            Metrics.recordError("storage." + operation);
+            throw e;
+        } finally {
+            Metrics.recordStorage(operation, System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T timeWrite(String operation, Operation<T> call) throws SQLException {
+        ConnectionManager.recordWrite();
+        return time(operation, call);
+    }
+
+    private interface Operation<T> {
+        T run() throws SQLException;
+    }
+}
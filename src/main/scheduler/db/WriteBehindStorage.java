@@ -0,0 +1,486 @@
+package scheduler.db;
+
+import scheduler.cache.AvailabilityCache;
+import scheduler.cache.VaccineCache;
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Slot;
+import scheduler.model.Vaccine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Accepts dose additions and availability uploads as soon as they are appended to a local log, and applies
+// them to the wrapped storage in batches from a background thread, so the user doesn't wait for the database.
+// Nothing reads them back right away: they show up in searches once the batch is applied, a fraction of a
+// second later. Every other operation goes straight to the wrapped storage.
+//
+// The log is forced to disk before a write is acknowledged. Each batch is applied in one transaction together
+// with the sequence number of its last write, so after a crash the writes the storage has not seen are applied
+// again from the log, and none twice. When every logged write is applied the log is emptied. The sequence is
+// recorded under an ID kept next to the log (the log's name with .id appended), so two processes whose logs
+// have the same name never share one.
+//
+// A write is checked as far as it can be without the database before it is acknowledged. If a batch fails with
+// a data or constraint error, like availability for a caregiver that does not exist or doses that would take a
+// vaccine past the largest int, retrying cannot help: its writes are applied one at a time and the ones that
+// fail are moved to the dead-letter file next to the log (the log's name with .dead appended), where they can
+// be fixed and uploaded again by hand. Other errors are retried.
+public class WriteBehindStorage implements Storage {
+
+    // constants for the background writer
+    private static final int MAX_PENDING = 10_000;
+    private static final long QUEUE_TIMEOUT_MS = 30_000;
+    private static final int BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL_MS = 50;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    // Vaccines.Name is varchar(255)
+    private static final int MAX_NAME_LENGTH = 255;
+    // SQL Server error numbers of data and constraint errors, for when the driver reports no SQLSTATE class:
+    // string truncation, arithmetic overflow, foreign key or check constraint, duplicate key and NULL column
+    private static final Set<Integer> PERMANENT_ERRORS = Set.of(8152, 2628, 8115, 547, 2627, 2601, 515);
+
+    private final Storage storage;
+    private final String logId;
+    private final FileChannel log;
+    private final Path deadLetters;
+    // held while appending, so the log and the queue are in sequence order
+    private final ReentrantLock logLock = new ReentrantLock();
+    // writes found in the log at startup that the storage has not applied, only used by the writer
+    private final ArrayDeque<QueuedWrite> recovered = new ArrayDeque<>();
+    // writes appended since, at most MAX_PENDING: a permit is taken before the log lock and given back when the
+    // writer takes the write, so an append waiting for room doesn't hold the lock
+    private final BlockingQueue<QueuedWrite> pending = new LinkedBlockingQueue<>();
+    private final Semaphore capacity = new Semaphore(MAX_PENDING);
+    private final Thread writer;
+    private long nextSequence;
+    // the last write appended and queued, guarded by logLock
+    private long queuedSequence;
+    private volatile long appliedSequence;
+    private volatile boolean closing = false;
+
+    public WriteBehindStorage(Storage storage, Path logFile) throws IOException, SQLException {
+        this.storage = storage;
+        this.logId = readLogId(logFile);
+        this.deadLetters = logFile.resolveSibling(logFile.getFileName() + ".dead");
+        this.appliedSequence = storage.getAppliedSequence(logId);
+        long lastSequence = appliedSequence;
+        // writes the storage has not seen yet are replayed first
+        if (Files.exists(logFile)) {
+            try (BufferedReader lines = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+                String line;
+                int number = 0;
+                while ((line = lines.readLine()) != null) {
+                    number++;
+                    QueuedWrite write = QueuedWrite.parse(line);
+                    if (write == null) {
+                        // only a last line cut off by a crash is expected, anything else means lost writes
+                        System.out.println("Line " + number + " of " + logFile + " is not a complete write, " +
+                                "moving it to " + deadLetters);
+                        appendDeadLetter("corrupt record on line " + number + " of " + logFile, line);
+                    }
+                    if (write != null && write.getSequence() > appliedSequence) {
+                        recovered.add(write);
+                    }
+                    if (write != null) {
+                        lastSequence = Math.max(lastSequence, write.getSequence());
+                    }
+                }
+            }
+        }
+        this.nextSequence = lastSequence + 1;
+        this.queuedSequence = lastSequence;
+        this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (!recovered.isEmpty()) {
+            System.out.println("Replaying " + recovered.size() + " writes from " + logFile);
+        }
+        this.writer = new Thread(this::writeBehind, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        // whatever is not applied by then stays in the log for the next start
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    @Override
+    public int addAvailability(String caregiver, List<Date> dates, int slots) throws SQLException {
+        if (slots == 0 || (slots & ~Slot.ALL) != 0) {
+            throw new SQLDataException("Invalid slots " + Integer.toHexString(slots));
+        }
+        append(sequence -> QueuedWrite.availability(sequence, caregiver, dates, slots));
+        return -1;
+    }
+
+    @Override
+    public void addDoses(Map<String, Integer> doses) throws SQLException {
+        for (Map.Entry<String, Integer> vaccine : doses.entrySet()) {
+            if (vaccine.getKey().isEmpty() || vaccine.getKey().length() > MAX_NAME_LENGTH) {
+                throw new SQLDataException("Vaccine names must be 1 to " + MAX_NAME_LENGTH + " characters long");
+            }
+            if (vaccine.getValue() <= 0) {
+                throw new SQLDataException("Cannot add " + vaccine.getValue() + " doses of " + vaccine.getKey());
+            }
+        }
+        append(sequence -> QueuedWrite.doses(sequence, doses));
+    }
+
+    // Returns the ID of the log from its .id file, creating the file with a random UUID for a new log. A log
+    // written before there were ID files was recorded under its file name and keeps it, or it would be replayed.
+    private static String readLogId(Path logFile) throws IOException {
+        Path idFile = logFile.resolveSibling(logFile.getFileName() + ".id");
+        if (Files.exists(idFile)) {
+            String id = Files.readString(idFile, StandardCharsets.UTF_8).strip();
+            if (id.isEmpty()) {
+                throw new IOException(idFile + " is empty, it should hold the ID of " + logFile);
+            }
+            return id;
+        }
+        String id = Files.exists(logFile) && Files.size(logFile) > 0 ? logFile.getFileName().toString() :
+                UUID.randomUUID().toString();
+        // written to a temporary file first, so a crash cannot leave an empty ID file behind
+        Path written = logFile.resolveSibling(logFile.getFileName() + ".id.tmp");
+        try (FileChannel file = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.wrap((id + "\n").getBytes(StandardCharsets.UTF_8)));
+            file.force(false);
+        }
+        Files.move(written, idFile, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    // Logs the write and queues it for the writer, the sequence numbers follow the order of the log
+    private void append(Entry entry) throws SQLException {
+        try {
+            if (!capacity.tryAcquire(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Too many writes are waiting to be applied, try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while queueing a write", e);
+        }
+        // the write reaches the primary shortly, so the session should not read from the replica either
+        ConnectionManager.recordWrite();
+        boolean queued = false;
+        logLock.lock();
+        try {
+            // a sequence number is never reused, even if the write fails
+            QueuedWrite write = entry.create(nextSequence++);
+            log.write(ByteBuffer.wrap((write.toLine() + "\n").getBytes(StandardCharsets.UTF_8)));
+            log.force(false);
+            pending.add(write);
+            queued = true;
+            queuedSequence = write.getSequence();
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the write-behind log", e);
+        } finally {
+            logLock.unlock();
+            if (!queued) {
+                capacity.release();
+            }
+        }
+    }
+
+    private void writeBehind() {
+        ArrayList<QueuedWrite> batch = new ArrayList<>(BATCH_SIZE);
+        long retryDelay = FLUSH_INTERVAL_MS;
+        while (!closing || !recovered.isEmpty() || !pending.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty() && !recovered.isEmpty()) {
+                    while (batch.size() < BATCH_SIZE && !recovered.isEmpty()) {
+                        batch.add(recovered.poll());
+                    }
+                } else if (batch.isEmpty()) {
+                    QueuedWrite first = pending.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    int taken = 1 + pending.drainTo(batch, BATCH_SIZE - 1);
+                    capacity.release(taken);
+                }
+                try {
+                    apply(batch);
+                    batch.clear();
+                } catch (SQLException e) {
+                    if (!isPermanent(e)) {
+                        throw e;
+                    }
+                    // retrying the batch cannot help, each write is applied on its own to find the ones that fail
+                    System.out.println("Queued writes failed with a data error, applying them one at a time");
+                    e.printStackTrace();
+                    applyEach(batch);
+                }
+                retryDelay = FLUSH_INTERVAL_MS;
+                offerToWaitlist();
+                truncateIfApplied();
+            } catch (SQLException e) {
+                // the batch stays in the log and is retried, later writes wait behind it to keep the order
+                System.out.println("Could not apply queued writes, retrying in " + retryDelay + " ms");
+                e.printStackTrace();
+                sleep(retryDelay);
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void apply(List<QueuedWrite> batch) throws SQLException {
+        long last = batch.get(batch.size() - 1).getSequence();
+        storage.applyWrites(logId, last, batch);
+        appliedSequence = last;
+        for (QueuedWrite write : batch) {
+            if (write.getKind() == QueuedWrite.Kind.DOSES) {
+                VaccineCache.invalidate();
+            } else {
+                for (Date d : write.getDates()) {
+                    AvailabilityCache.invalidate(d);
+                }
+            }
+        }
+    }
+
+    // Applies the writes one at a time, removing each from the batch once it is applied or dead-lettered.
+    // Stops at the first write that fails with an error that may be transient, it is retried with the rest.
+    private void applyEach(List<QueuedWrite> batch) throws SQLException {
+        while (!batch.isEmpty()) {
+            QueuedWrite write = batch.get(0);
+            try {
+                apply(List.of(write));
+            } catch (SQLException e) {
+                if (!isPermanent(e)) {
+                    throw e;
+                }
+                deadLetter(write, e);
+            }
+            batch.remove(0);
+        }
+    }
+
+    // Moves a write that can never be applied to the dead-letter file and records it as applied, so it is not
+    // replayed. The file is written first: if recording fails the write is retried and may be listed twice,
+    // but never lost.
+    private void deadLetter(QueuedWrite write, SQLException e) throws SQLException {
+        System.out.println("Could not apply write " + write.getSequence() + ", moving it to " + deadLetters + ": " +
+                e.getMessage());
+        try {
+            appendDeadLetter(e.getMessage(), write.toLine());
+        } catch (IOException io) {
+            throw new SQLException("Could not write to the dead-letter file " + deadLetters, io);
+        }
+        storage.applyWrites(logId, write.getSequence(), List.of());
+        appliedSequence = write.getSequence();
+    }
+
+    // Adds the line to the dead-letter file after a comment saying when and why
+    private void appendDeadLetter(String reason, String line) throws IOException {
+        String entry = "# " + LocalDateTime.now() + " " + reason + "\n" + line + "\n";
+        try (FileChannel dead = FileChannel.open(deadLetters, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            dead.write(ByteBuffer.wrap(entry.getBytes(StandardCharsets.UTF_8)));
+            dead.force(false);
+        }
+    }
+
+    // the capacity just written is offered to the waitlist, the command that queued it could not
+    private void offerToWaitlist() {
+        try {
+            for (Appointment booked : storage.assignWaitlist()) {
+                AvailabilityCache.invalidate(booked.getTime());
+                VaccineCache.invalidate();
+            }
+        } catch (SQLException e) {
+            // the batch is applied, the waitlist gets another chance with the next change
+            e.printStackTrace();
+        }
+    }
+
+    // Data errors (SQLSTATE class 22, like a name too long for its column or a sum out of range) and constraint
+    // violations (class 23) fail the same way however often they are retried, anything else may be transient
+    private static boolean isPermanent(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLDataException || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if ((state != null && (state.startsWith("22") || state.startsWith("23"))) ||
+                        PERMANENT_ERRORS.contains(((SQLException) cause).getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Empties the log once every write in it is applied, so it doesn't grow for as long as the process runs.
+    // An append may be logging under the lock, so this doesn't wait for it and tries after the next batch.
+    private void truncateIfApplied() {
+        if (!logLock.tryLock()) {
+            return;
+        }
+        try {
+            if (appliedSequence == queuedSequence) {
+                log.truncate(0);
+                log.force(false);
+            }
+        } catch (IOException e) {
+            // the applied writes are skipped on replay, the log is just longer than it needs to be
+            e.printStackTrace();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void close() {
+        closing = true;
+        try {
+            writer.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean patientExists(String username) throws SQLException {
+        return storage.patientExists(username);
+    }
+
+    @Override
+    public boolean caregiverExists(String username) throws SQLException {
+        return storage.caregiverExists(username);
+    }
+
+    @Override
+    public void savePatient(Patient patient) throws SQLException {
+        storage.savePatient(patient);
+    }
+
+    @Override
+    public Patient findPatient(String username) throws SQLException {
+        return storage.findPatient(username);
+    }
+
+    @Override
+    public void saveCaregiver(Caregiver caregiver) throws SQLException {
+        storage.saveCaregiver(caregiver);
+    }
+
+    @Override
+    public Caregiver findCaregiver(String username) throws SQLException {
+        return storage.findCaregiver(username);
+    }
+
+    @Override
+    public List<String> getUsernames(boolean caregiver) throws SQLException {
+        return storage.getUsernames(caregiver);
+    }
+
+    @Override
+    public Map<String, Integer> getAvailability(Date time) throws SQLException {
+        return storage.getAvailability(time);
+    }
+
+    @Override
+    public LocalDateTime nextFreeSlot(LocalDateTime from) throws SQLException {
+        return storage.nextFreeSlot(from);
+    }
+
+    @Override
+    public void saveVaccine(Vaccine vaccine) throws SQLException {
+        storage.saveVaccine(vaccine);
+    }
+
+    @Override
+    public Vaccine findVaccine(String vaccineName) throws SQLException {
+        return storage.findVaccine(vaccineName);
+    }
+
+    @Override
+    public int changeDoses(String vaccineName, int delta) throws SQLException {
+        return storage.changeDoses(vaccineName, delta);
+    }
+
+    @Override
+    public Map<String, Integer> getVaccines() throws SQLException {
+        return storage.getVaccines();
+    }
+
+    @Override
+    public Appointment reserve(String patient, String vaccineName, Date time, int slot) throws SQLException {
+        return storage.reserve(patient, vaccineName, time, slot);
+    }
+
+    @Override
+    public Appointment cancel(int aid, String username, boolean caregiver) throws SQLException {
+        return storage.cancel(aid, username, caregiver);
+    }
+
+    @Override
+    public List<Appointment> getAppointments(String username, boolean caregiver, Date from, Date to,
+                                             Appointment after, int limit) throws SQLException {
+        return storage.getAppointments(username, caregiver, from, to, after, limit);
+    }
+
+    @Override
+    public int joinWaitlist(String patient, String vaccineName, Date from, Date to) throws SQLException {
+        return storage.joinWaitlist(patient, vaccineName, from, to);
+    }
+
+    @Override
+    public boolean leaveWaitlist(String patient) throws SQLException {
+        return storage.leaveWaitlist(patient);
+    }
+
+    @Override
+    public List<Appointment> assignWaitlist() throws SQLException {
+        return storage.assignWaitlist();
+    }
+
+    @Override
+    public long getAppliedSequence(String log) throws SQLException {
+        return storage.getAppliedSequence(log);
+    }
+
+    @Override
+    public void applyWrites(String log, long sequence, List<QueuedWrite> writes) throws SQLException {
+        storage.applyWrites(log, sequence, writes);
+    }
+
+    private interface Entry {
+        QueuedWrite create(long sequence);
+    }
+}
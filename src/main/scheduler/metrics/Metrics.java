@@ -0,0 +1,92 @@
+package scheduler.metrics;
+
+import scheduler.cache.AvailabilityCache;
+import scheduler.cache.SessionCache;
+import scheduler.cache.UsernameCache;
+import scheduler.cache.VaccineCache;
+import scheduler.db.ConnectionManager;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide timers and error counters for commands, storage operations and connection acquisition.
+// The same report is printed by the stats command and exposed over JMX.
+public class Metrics implements MetricsMBean {
+
+    private static final Map<String, LatencyRecorder> commands = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyRecorder> storage = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private static final LatencyRecorder connectionAcquire = new LatencyRecorder();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(),
+                    new ObjectName("scheduler:type=Metrics"));
+        } catch (JMException e) {
+            System.out.println("Could not register the metrics with JMX: " + e);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static void recordCommand(String command, long nanos) {
+        commands.computeIfAbsent(command, name -> new LatencyRecorder()).record(nanos);
+    }
+
+    public static void recordStorage(String operation, long nanos) {
+        storage.computeIfAbsent(operation, name -> new LatencyRecorder()).record(nanos);
+    }
+
+    public static void recordConnectionAcquire(long nanos) {
+        connectionAcquire.record(nanos);
+    }
+
+    public static void recordError(String source) {
+        errors.computeIfAbsent(source, name -> new LongAdder()).increment();
+    }
+
+    // Plain-text report, one line per timer so it is easy to scrape
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Commands:\n");
+        appendTimers(report, commands);
+        report.append("Storage operations:\n");
+        appendTimers(report, storage);
+        report.append("Connection acquire:\n");
+        appendTimer(report, "acquire", connectionAcquire);
+        report.append("Errors:\n");
+        for (Map.Entry<String, LongAdder> error : new TreeMap<>(errors).entrySet()) {
+            report.append(String.format("    %-28s %d%n", error.getKey(), error.getValue().sum()));
+        }
+        report.append(ConnectionManager.getPoolStats()).append('\n');
+        report.append(AvailabilityCache.getStats()).append('\n');
+        report.append(VaccineCache.getStats()).append('\n');
+        report.append(UsernameCache.getStats()).append('\n');
+        report.append(SessionCache.getStats());
+        return report.toString();
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    private static void appendTimers(StringBuilder report, Map<String, LatencyRecorder> timers) {
+        for (Map.Entry<String, LatencyRecorder> timer : new TreeMap<>(timers).entrySet()) {
+            appendTimer(report, timer.getKey(), timer.getValue());
+        }
+    }
+
+    private static void appendTimer(StringBuilder report, String name, LatencyRecorder timer) {
+        report.append(String.format("    %-28s count=%d mean=%dus p50=%dus p99=%dus p999=%dus max=%dus%n", name,
+                timer.getCount(), timer.getMeanNanos() / 1000, timer.getPercentileNanos(0.50) / 1000,
+                timer.getPercentileNanos(0.99) / 1000, timer.getPercentileNanos(0.999) / 1000,
+                timer.getMaxNanos() / 1000));
+    }
+}
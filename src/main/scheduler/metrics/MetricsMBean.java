@@ -0,0 +1,7 @@
+package scheduler.metrics;
+
+// JMX view of the scheduler metrics, registered as scheduler:type=Metrics
+public interface MetricsMBean {
+
+    String getReport();
+}
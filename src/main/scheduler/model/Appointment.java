@@ -0,0 +1,105 @@
+package scheduler.model;
+
+import scheduler.db.Storage;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalTime;
+
+public class Appointment {
+
+    // outcome of a reservation attempt
+    public enum Status {
+        BOOKED,
+        ALREADY_BOOKED,
+        NO_DOSES,
+        NO_CAREGIVER
+    }
+
+    private final Status status;
+    private final int aid;
+    private final String caregiver;
+    private final String patient;
+    private final String vaccineName;
+    private final Date time;
+    private final int slot;
+
+    // a booked appointment
+    public Appointment(int aid, String caregiver, String patient, String vaccineName, Date time, int slot) {
+        this.status = Status.BOOKED;
+        this.aid = aid;
+        this.caregiver = caregiver;
+        this.patient = patient;
+        this.vaccineName = vaccineName;
+        this.time = time;
+        this.slot = slot;
+    }
+
+    // a reservation that could not be booked, it has no AID or caregiver and keeps the requested slot
+    public Appointment(Status status, String patient, String vaccineName, Date time, int slot) {
+        this.status = status;
+        this.aid = -1;
+        this.caregiver = null;
+        this.patient = patient;
+        this.vaccineName = vaccineName;
+        this.time = time;
+        this.slot = slot;
+    }
+
+    // Getters
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAid() {
+        return aid;
+    }
+
+    public String getCaregiver() {
+        return caregiver;
+    }
+
+    public String getPatient() {
+        return patient;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public LocalTime getStartTime() {
+        return Slot.start(slot);
+    }
+
+    public static class AppointmentBuilder {
+        private final String patient;
+        private final String vaccineName;
+        private final Date time;
+        private final int slot;
+
+        // books the earliest free slot on the date
+        public AppointmentBuilder(String patient, String vaccineName, Date time) {
+            this(patient, vaccineName, time, -1);
+        }
+
+        public AppointmentBuilder(String patient, String vaccineName, Date time, int slot) {
+            this.patient = patient;
+            this.vaccineName = vaccineName;
+            this.time = time;
+            this.slot = slot;
+        }
+
+        // Books the appointment atomically, only a BOOKED appointment has an AID and caregiver
+        public Appointment reserve() throws SQLException {
+            return Storage.get().reserve(this.patient, this.vaccineName, this.time, this.slot);
+        }
+    }
+}
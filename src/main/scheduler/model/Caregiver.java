@@ -1,26 +1,23 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
-import scheduler.util.Util;
+import scheduler.cache.AvailabilityCache;
+import scheduler.db.Storage;
+import scheduler.util.PasswordHasher;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.util.List;
 
 public class Caregiver {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final String hashParams;
 
     private Caregiver(CaregiverBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
-    }
-
-    private Caregiver(CaregiverGetter getter) {
-        this.username = getter.username;
-        this.salt = getter.salt;
-        this.hash = getter.hash;
+        this.hashParams = builder.hashParams;
     }
 
     // Getters
@@ -36,50 +33,41 @@ public class Caregiver {
         return hash;
     }
 
+    public String getHashParams() {
+        return hashParams;
+    }
+
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Storage.get().saveCaregiver(this);
+    }
+
+    // Offers the given slots on the date, see Slot. Returns false if they were all uploaded already,
+    // an upload queued to be written later counts as uploaded.
+    public boolean uploadAvailability(Date d, int slots) throws SQLException {
+        return uploadAvailability(List.of(d), slots) != 0;
     }
 
-    public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+    // Offers the same slots on many dates at once, slots already uploaded are skipped.
+    // Returns the number of slots that were added, or -1 if the upload was queued, see Storage.
+    public int uploadAvailability(List<Date> dates, int slots) throws SQLException {
+        int added = Storage.get().addAvailability(this.username, dates, slots);
+        for (Date d : dates) {
+            AvailabilityCache.invalidate(d);
         }
+        return added;
     }
 
     public static class CaregiverBuilder {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final String hashParams;
 
-        public CaregiverBuilder(String username, byte[] salt, byte[] hash) {
+        public CaregiverBuilder(String username, byte[] salt, byte[] hash, String hashParams) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashParams = hashParams;
         }
 
         public Caregiver build() {
@@ -90,8 +78,6 @@ public class Caregiver {
     public static class CaregiverGetter {
         private final String username;
         private final String password;
-        private byte[] salt;
-        private byte[] hash;
 
         public CaregiverGetter(String username, String password) {
             this.username = username;
@@ -99,35 +85,13 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
-                }
+            Caregiver stored = Storage.get().findCaregiver(this.username);
+            // check if the password matches
+            if (stored == null || !PasswordHasher.verify(password, stored.getSalt(), stored.getHash(),
+                    stored.getHashParams())) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            return stored;
         }
     }
 }
@@ -1,27 +1,22 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
-import scheduler.util.Util;
+import scheduler.db.Storage;
+import scheduler.util.PasswordHasher;
 
 import java.sql.*;
-import java.util.Arrays;
 
 public class Patient {
 
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final String hashParams;
 
     private Patient(Patient.PatientBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
-    }
-
-    private Patient(Patient.PatientGetter getter) {
-        this.username = getter.username;
-        this.salt = getter.salt;
-        this.hash = getter.hash;
+        this.hashParams = builder.hashParams;
     }
 
     // Getters
@@ -37,33 +32,25 @@ public class Patient {
         return hash;
     }
 
+    public String getHashParams() {
+        return hashParams;
+    }
+
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addPatient = "INSERT INTO Patients VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Storage.get().savePatient(this);
     }
 
     public static class PatientBuilder {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final String hashParams;
 
-        public PatientBuilder(String username, byte[] salt, byte[] hash) {
+        public PatientBuilder(String username, byte[] salt, byte[] hash, String hashParams) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashParams = hashParams;
         }
 
         public Patient build() {
@@ -74,8 +61,6 @@ public class Patient {
     public static class PatientGetter {
         private final String username;
         private final String password;
-        private byte[] salt;
-        private byte[] hash;
 
         public PatientGetter(String username, String password) {
             this.username = username;
@@ -83,35 +68,13 @@ public class Patient {
         }
 
         public Patient get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
-                    }
-                }
+            Patient stored = Storage.get().findPatient(this.username);
+            // check if the password matches
+            if (stored == null || !PasswordHasher.verify(password, stored.getSalt(), stored.getHash(),
+                    stored.getHashParams())) {
                 return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
+            return stored;
         }
     }
 
@@ -0,0 +1,66 @@
+package scheduler.model;
+
+import java.time.Duration;
+import java.time.LocalTime;
+
+// Caregivers offer and patients book fixed-length slots within the working day. Slots are numbered from 0
+// at DAY_START, and the slots of a caregiver on one day are kept as an int with bit i set for slot i.
+public final class Slot {
+
+    public static final LocalTime DAY_START = LocalTime.of(9, 0);
+    public static final int LENGTH_MINUTES = 30;
+    // 09:00 to 17:00
+    public static final int PER_DAY = 16;
+    public static final int ALL = (1 << PER_DAY) - 1;
+
+    private Slot() {
+    }
+
+    public static LocalTime start(int slot) {
+        return DAY_START.plusMinutes((long) slot * LENGTH_MINUTES);
+    }
+
+    // Returns the slot starting at the given time, or -1 if no slot starts then
+    public static int of(LocalTime time) {
+        int minutes = (int) Duration.between(DAY_START, time).toMinutes();
+        if (time.isBefore(DAY_START) || minutes % LENGTH_MINUTES != 0 || time.getSecond() != 0
+                || minutes / LENGTH_MINUTES >= PER_DAY) {
+            return -1;
+        }
+        return minutes / LENGTH_MINUTES;
+    }
+
+    // Returns the first slot starting at or after the given time, PER_DAY if that is past the working day
+    public static int firstFrom(LocalTime time) {
+        if (!time.isAfter(DAY_START)) {
+            return 0;
+        }
+        long seconds = Duration.between(DAY_START, time).toSeconds();
+        return (int) Math.min(PER_DAY, (seconds + LENGTH_MINUTES * 60L - 1) / (LENGTH_MINUTES * 60L));
+    }
+
+    // Returns the slots from start up to end, or 0 if the times are not slot boundaries in the working day
+    public static int between(LocalTime start, LocalTime end) {
+        int first = of(start);
+        int last = end.equals(start(PER_DAY)) ? PER_DAY : of(end);
+        if (first < 0 || last <= first) {
+            return 0;
+        }
+        return (1 << last) - (1 << first);
+    }
+
+    // Formats the slots as time ranges, e.g. "09:00-12:00 14:00-17:00"
+    public static String format(int slots) {
+        StringBuilder ranges = new StringBuilder();
+        int slot = Integer.numberOfTrailingZeros(slots);
+        while (slot < PER_DAY) {
+            int end = Integer.numberOfTrailingZeros(~slots & (-1 << slot));
+            if (ranges.length() > 0) {
+                ranges.append(' ');
+            }
+            ranges.append(start(slot)).append('-').append(start(end));
+            slot = Integer.numberOfTrailingZeros(slots & (-1 << end));
+        }
+        return ranges.toString();
+    }
+}
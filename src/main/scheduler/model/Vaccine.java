@@ -1,11 +1,10 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.cache.VaccineCache;
+import scheduler.db.Storage;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class Vaccine {
     private final String vaccineName;
@@ -16,11 +15,6 @@ public class Vaccine {
         this.availableDoses = builder.availableDoses;
     }
 
-    private Vaccine(VaccineGetter getter) {
-        this.vaccineName = getter.vaccineName;
-        this.availableDoses = getter.availableDoses;
-    }
-
     // Getters
     public String getVaccineName() {
         return vaccineName;
@@ -31,20 +25,8 @@ public class Vaccine {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        Storage.get().saveVaccine(this);
+        VaccineCache.invalidate();
     }
 
     // Increment the available doses
@@ -52,44 +34,29 @@ public class Vaccine {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
-
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        this.availableDoses = changeDoses(this.vaccineName, num);
     }
 
     // Decrement the available doses
     public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
-            throw new IllegalArgumentException("Not enough available doses!");
-        }
-        this.availableDoses -= num;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
         }
+        this.availableDoses = changeDoses(this.vaccineName, -num);
+    }
+
+    // Applies delta to the stored dose count atomically and returns the new count,
+    // so concurrent updates never overwrite each other and callers don't need to read the count first
+    public static int changeDoses(String vaccineName, int delta) throws SQLException {
+        int doses = Storage.get().changeDoses(vaccineName, delta);
+        VaccineCache.invalidate();
+        return doses;
+    }
+
+    // Adds doses to many vaccines in one transaction, creating the vaccines that don't exist yet
+    public static void addDoses(Map<String, Integer> doses) throws SQLException {
+        Storage.get().addDoses(doses);
+        VaccineCache.invalidate();
     }
 
     @Override
@@ -116,31 +83,13 @@ public class Vaccine {
 
     public static class VaccineGetter {
         private final String vaccineName;
-        private int availableDoses;
 
         public VaccineGetter(String vaccineName) {
             this.vaccineName = vaccineName;
         }
 
         public Vaccine get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
-                statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    return new Vaccine(this);
-                }
-                return null;
-            } catch (SQLException e) {
-                throw new SQLException();
-            } finally {
-                cm.closeConnection();
-            }
+            return Storage.get().findVaccine(this.vaccineName);
         }
     }
 }
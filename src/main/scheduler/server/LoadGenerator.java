@@ -0,0 +1,107 @@
+package scheduler.server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives a running SchedulerServer with many simulated patients and reports command latency.
+// Usage: java scheduler.server.LoadGenerator <host> <port> <users> <rounds> <date>
+public class LoadGenerator {
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 5) {
+            System.out.println("Usage: LoadGenerator <host> <port> <users> <rounds> <date>");
+            return;
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int users = Integer.parseInt(args[2]);
+        int rounds = Integer.parseInt(args[3]);
+        String date = args[4];
+
+        // every user records the latency of each of its commands in its own slice of the array
+        int commandsPerUser = 2 + 2 * rounds;
+        long[] latencies = new long[users * commandsPerUser];
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(users);
+        String run = Long.toString(System.currentTimeMillis(), 36);
+
+        long start = System.nanoTime();
+        for (int user = 0; user < users; user++) {
+            int offset = user * commandsPerUser;
+            String username = "load_" + run + "_" + user;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    socket.setTcpNoDelay(true);
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    OutputStream out = socket.getOutputStream();
+                    readResponse(in, true);
+                    int i = offset;
+                    // creating the account also logs the patient in
+                    latencies[i++] = send(in, out, "create_patient " + username + " password");
+                    for (int round = 0; round < rounds; round++) {
+                        latencies[i++] = send(in, out, "search_caregiver_schedule " + date);
+                        latencies[i++] = send(in, out, "show_appointments");
+                    }
+                    latencies[i] = send(in, out, "logout");
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        long[] completed = Arrays.stream(latencies).filter(latency -> latency > 0).sorted().toArray();
+        System.out.println(users + " users, " + completed.length + " commands in " + elapsed / 1_000_000 + " ms (" +
+                (completed.length * 1_000_000_000L / Math.max(elapsed, 1)) + " commands/sec), " +
+                failures.get() + " users failed");
+        if (completed.length > 0) {
+            System.out.println("p50 " + percentile(completed, 0.50) + " us, p99 " + percentile(completed, 0.99) +
+                    " us, max " + completed[completed.length - 1] / 1000 + " us");
+        }
+    }
+
+    // Sends one command and returns the time in nanoseconds until the server prompts again
+    private static long send(InputStream in, OutputStream out, String command) throws IOException {
+        long start = System.nanoTime();
+        out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        readResponse(in, false);
+        return System.nanoTime() - start;
+    }
+
+    // Reads until the "> " prompt at the start of a line. The greeting lists the commands on
+    // lines starting with "> " and ends with an empty line, so there the prompt follows a blank line.
+    private static void readResponse(InputStream in, boolean greeting) throws IOException {
+        // the last three characters read, a response starts where the previous prompt left off
+        int last = greeting ? -1 : '\n';
+        int secondLast = -1;
+        int thirdLast = -1;
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                throw new IOException("Server closed the connection");
+            }
+            if (c == ' ' && last == '>' && secondLast == '\n' && (!greeting || thirdLast == '\n')) {
+                return;
+            }
+            thirdLast = secondLast;
+            secondLast = last;
+            last = c;
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)))] / 1000;
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler.server;
+
+import scheduler.CommandExecutor;
+import scheduler.Scheduler;
+import scheduler.Session;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Serves the Scheduler commands over TCP, each connection gets its own Session and sees the same
+// greeting and "> " prompt as the console, so the protocol can be used with a plain telnet or nc client
+public class SchedulerServer {
+
+    private static final int ACCEPT_BACKLOG = 1024;
+    // every client holds a thread and a session, connections past this are turned away
+    private static final int MAX_CLIENTS = 1_000;
+
+    private final int port;
+    // every client is read by its own thread, the commands it sends run on the command executor
+    private final CommandExecutor commands = new CommandExecutor();
+    private final ExecutorService clients = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "scheduler-client");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore connected = new Semaphore(MAX_CLIENTS);
+
+    public SchedulerServer(int port) {
+        this.port = port;
+    }
+
+    public void serve() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, ACCEPT_BACKLOG)) {
+            System.out.println("Scheduler server listening on port " + port);
+            while (true) {
+                Socket socket = server.accept();
+                if (!connected.tryAcquire()) {
+                    reject(socket);
+                    continue;
+                }
+                clients.execute(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        connected.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void reject(Socket socket) {
+        try (socket) {
+            socket.getOutputStream().write("Too many users are connected, please try again later.\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the client went away already
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(
+                     new BufferedOutputStream(socket.getOutputStream()), false, StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            Session session = new Session(out);
+            Scheduler.printGreeting(out);
+            CommandExecutor.Queue queue = commands.open(session, () -> {
+                out.print("> ");
+                out.flush();
+            });
+            out.print("> ");
+            out.flush();
+            try {
+                String line;
+                while ((line = in.readLine()) != null && queue.submit(line)) {
+                }
+            } finally {
+                // the output of commands still running goes out before the connection is closed
+                queue.close();
+            }
+        } catch (IOException e) {
+            // the client went away, its session ends with the connection
+        }
+    }
+}
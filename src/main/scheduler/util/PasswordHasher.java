@@ -0,0 +1,116 @@
+package scheduler.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PasswordHasher {
+
+    // Hash parameters are stored with every record as "<algorithm>:<iterations>:<key length in bits>",
+    // so the cost can be raised without breaking the records that were hashed before.
+    // Records without parameters were hashed with the original settings below.
+    private static final String LEGACY_PARAMS = "PBKDF2WithHmacSHA1:10:16";
+    private static final String DEFAULT_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 310_000;
+    // the Hash columns are BINARY(16)
+    private static final int KEY_LENGTH = 128;
+
+    private static final String currentParams = (System.getenv("HashAlgorithm") == null ?
+            DEFAULT_ALGORITHM : System.getenv("HashAlgorithm")) + ":" + getIterations() + ":" + KEY_LENGTH;
+
+    // hashing is CPU bound, so at most one hash per core runs at a time no matter how many callers there are
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "password-hasher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // SecretKeyFactory.getInstance does a provider lookup on every call and factories are not thread-safe
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> factories =
+            ThreadLocal.withInitial(HashMap::new);
+
+    // Returns the parameters new hashes should be created with
+    public static String getCurrentParams() {
+        return currentParams;
+    }
+
+    // Hashes a new password with the current parameters on the hashing pool
+    public static byte[] create(String password, byte[] salt) {
+        byte[] hash = run(() -> hash(password, salt, currentParams));
+        if (hash == null) {
+            throw new IllegalStateException("Interrupted while hashing");
+        }
+        return hash;
+    }
+
+    public static byte[] hash(String password, byte[] salt, String params) {
+        String[] parts = params.split(":");
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, Integer.parseInt(parts[1]),
+                Integer.parseInt(parts[2]));
+        try {
+            SecretKeyFactory factory = factories.get().get(parts[0]);
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(parts[0]);
+                factories.get().put(parts[0], factory);
+            }
+            return factory.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
+            throw new IllegalStateException("Cannot hash with " + params, ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // Checks the password against a stored record on the hashing pool, params is null for legacy records
+    public static boolean verify(String password, byte[] salt, byte[] storedHash, String params) {
+        Boolean matches = run(() -> {
+            if (params == null) {
+                // we need to call Util.trim() to get rid of the paddings,
+                // try to remove the use of Util.trim() and you'll see :)
+                return MessageDigest.isEqual(Util.trim(storedHash), hash(password, salt, LEGACY_PARAMS));
+            }
+            return MessageDigest.isEqual(storedHash, hash(password, salt, params));
+        });
+        return matches != null && matches;
+    }
+
+    // Runs the task on the hashing pool and waits for it, returns null if the caller is interrupted
+    private static <T> T run(Callable<T> task) {
+        Future<T> result = pool.submit(task);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static int getIterations() {
+        String iterations = System.getenv("HashIterations");
+        if (iterations == null) {
+            return DEFAULT_ITERATIONS;
+        }
+        try {
+            int parsed = Integer.parseInt(iterations.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("HashIterations must be a positive whole number, got \"" + iterations +
+                "\"");
+    }
+}
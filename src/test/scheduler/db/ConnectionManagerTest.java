@@ -0,0 +1,166 @@
+package scheduler.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Checks which pool ConnectionManager takes connections from, using pools of stub connections so no database
+// is needed. Runs without a test framework and throws AssertionError on the first failed check:
+//   javac -cp <scheduler classes> -d <out> src/test/scheduler/db/ConnectionManagerTest.java
+//   java -cp <scheduler classes>:<out> scheduler.db.ConnectionManagerTest
+public class ConnectionManagerTest {
+
+    public static void main(String[] args) throws Exception {
+        readsUseReplicaOnlyWhenAllowed();
+        readsYourOwnWrites();
+        fallsBackWhenReplicaDown();
+        fallsBackWhenReplicaBusy();
+        throwsWhenPrimaryDown();
+        System.out.println("ConnectionManagerTest passed");
+    }
+
+    private static void readsUseReplicaOnlyWhenAllowed() throws SQLException {
+        ConnectionManager.Pool primary = stubPool("primary");
+        ConnectionManager.Pool replica = stubPool("replica");
+        long longAgo = System.currentTimeMillis() - 60_000;
+
+        ConnectionManager.startCommand(true, longAgo);
+        check("read-only command reads from the replica", openedBy(new ConnectionManager(true, primary, replica)),
+                "replica");
+        check("write connections go to the primary", openedBy(new ConnectionManager(false, primary, replica)),
+                "primary");
+        check("reads without a replica go to the primary", openedBy(new ConnectionManager(true, primary, null)),
+                "primary");
+
+        ConnectionManager.startCommand(false, longAgo);
+        check("command that may write reads from the primary",
+                openedBy(new ConnectionManager(true, primary, replica)), "primary");
+
+        ConnectionManager.endCommand();
+        check("reads outside a command go to the primary", openedBy(new ConnectionManager(true, primary, replica)),
+                "primary");
+    }
+
+    private static void readsYourOwnWrites() throws SQLException {
+        ConnectionManager.Pool primary = stubPool("primary");
+        ConnectionManager.Pool replica = stubPool("replica");
+
+        // a command that wrote, the session's next reads must see it
+        ConnectionManager.startCommand(false, 0);
+        ConnectionManager.recordWrite();
+        check("command recorded its write", ConnectionManager.endCommand(), true);
+        long lastWriteAt = System.currentTimeMillis();
+
+        ConnectionManager.startCommand(true, lastWriteAt);
+        check("read right after a write goes to the primary",
+                openedBy(new ConnectionManager(true, primary, replica)), "primary");
+        check("read-only command did not write", ConnectionManager.endCommand(), false);
+
+        // the default ReplicaLagMs is 5 seconds, a write this old is on the replica
+        ConnectionManager.startCommand(true, lastWriteAt - 5_000);
+        check("read after the lag goes to the replica", openedBy(new ConnectionManager(true, primary, replica)),
+                "replica");
+        ConnectionManager.endCommand();
+    }
+
+    private static void fallsBackWhenReplicaDown() throws SQLException {
+        ConnectionManager.Pool primary = stubPool("primary");
+        ConnectionManager.Pool replica = new ConnectionManager.Pool("replica", () -> {
+            throw new SQLException("replica unreachable", "08S01");
+        });
+
+        ConnectionManager.startCommand(true, 0);
+        check("read falls back when the replica cannot connect",
+                openedBy(new ConnectionManager(true, primary, replica)), "primary");
+        // the failed attempt must give its permit back, or the replica would run out after a few tries
+        for (int i = 0; i < 20; i++) {
+            check("read falls back again", openedBy(new ConnectionManager(true, primary, replica)), "primary");
+        }
+        ConnectionManager.endCommand();
+    }
+
+    private static void fallsBackWhenReplicaBusy() throws SQLException {
+        ConnectionManager.Pool primary = stubPool("primary");
+        ConnectionManager.Pool replica = stubPool("replica");
+
+        ConnectionManager.startCommand(true, 0);
+        List<ConnectionManager> holding = new ArrayList<>();
+        ConnectionManager busy = new ConnectionManager(true, primary, replica);
+        while (lastOpened(busy).equals("replica")) {
+            holding.add(busy);
+            busy = new ConnectionManager(true, primary, replica);
+        }
+        check("read falls back when every replica connection is in use", holding.size() > 0, true);
+        busy.closeConnection();
+
+        holding.remove(0).closeConnection();
+        check("read uses the replica once a connection is returned",
+                openedBy(new ConnectionManager(true, primary, replica)), "replica");
+        for (ConnectionManager cm : holding) {
+            cm.closeConnection();
+        }
+        ConnectionManager.endCommand();
+    }
+
+    private static void throwsWhenPrimaryDown() {
+        ConnectionManager.Pool primary = new ConnectionManager.Pool("primary", () -> {
+            throw new SQLException("primary unreachable", "08S01");
+        });
+
+        ConnectionManager.startCommand(false, 0);
+        ConnectionManager cm = new ConnectionManager(false, primary, null);
+        try {
+            Connection con = cm.createConnection();
+            throw new AssertionError("expected an SQLException when the primary is down, got " + con);
+        } catch (SQLException e) {
+            check("failure keeps the SQLState", e.getSQLState(), "08S01");
+        }
+        ConnectionManager.endCommand();
+    }
+
+    // Borrows a connection, returns the name of the pool that opened it and gives it back
+    private static String openedBy(ConnectionManager cm) throws SQLException {
+        String pool = lastOpened(cm);
+        cm.closeConnection();
+        return pool;
+    }
+
+    // Borrows a connection and returns the name of the pool that opened it, keeping it borrowed
+    private static String lastOpened(ConnectionManager cm) throws SQLException {
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new AssertionError("createConnection returned null");
+        }
+        return con.toString();
+    }
+
+    // A pool of connections that only know the name of the pool, which toString returns
+    private static ConnectionManager.Pool stubPool(String name) {
+        return new ConnectionManager.Pool(name, () -> (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toString":
+                            return name;
+                        case "getAutoCommit":
+                        case "isValid":
+                            return true;
+                        case "isClosed":
+                            return false;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                }));
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package scheduler.db;
+
+import scheduler.model.Appointment;
+import scheduler.model.Caregiver;
+import scheduler.model.Slot;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs many reservations against InMemoryStorage at once and checks nothing is booked twice. Runs without a test
+// framework and throws AssertionError on the first failed check:
+//   javac -cp <scheduler classes> -d <out> src/test/scheduler/db/InMemoryStorageTest.java
+//   java -cp <scheduler classes>:<out> scheduler.db.InMemoryStorageTest
+public class InMemoryStorageTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+    private static final String VACCINE = "pfizer";
+
+    public static void main(String[] args) throws Exception {
+        concurrentReservesRunOutOfDoses();
+        concurrentReservesRunOutOfSlots();
+        concurrentReservesAndCancels();
+        System.out.println("InMemoryStorageTest passed");
+    }
+
+    // 5 caregivers free all day on 3 days is 240 slots, more than the 150 doses
+    private static void concurrentReservesRunOutOfDoses() throws Exception {
+        InMemoryStorage storage = storage(5, 3, 150);
+        List<Appointment> booked = reserveConcurrently(storage, 80, 3);
+        check("bookings stop at the doses in stock", booked.size(), 150);
+        check("doses left", storage.getVaccines().get(VACCINE), 0);
+        checkNoDoubleBookings(booked);
+    }
+
+    // 1 caregiver free all day on 1 day is 16 slots, far fewer than the doses and patients
+    private static void concurrentReservesRunOutOfSlots() throws Exception {
+        InMemoryStorage storage = storage(1, 1, 1_000);
+        List<Appointment> booked = reserveConcurrently(storage, 50, 1);
+        check("bookings stop at the free slots", booked.size(), Slot.PER_DAY);
+        check("doses left", storage.getVaccines().get(VACCINE), 1_000 - Slot.PER_DAY);
+        checkNoDoubleBookings(booked);
+    }
+
+    // half the appointments are canceled while other patients book the slots they free
+    private static void concurrentReservesAndCancels() throws Exception {
+        InMemoryStorage storage = storage(3, 2, 1_000);
+        List<Appointment> first = reserveConcurrently(storage, 40, 2);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Callable<Appointment>> tasks = new ArrayList<>();
+        for (Appointment appointment : first) {
+            if (appointment.getAid() % 2 == 0) {
+                tasks.add(() -> storage.cancel(appointment.getAid(), appointment.getPatient(), false));
+            }
+        }
+        int canceled = tasks.size();
+        for (int p = 0; p < 40; p++) {
+            for (int day = 0; day < 2; day++) {
+                tasks.add(reserveTask(storage, "late" + p, day, -1));
+            }
+        }
+        List<Appointment> second = runAll(pool, tasks);
+        pool.shutdown();
+
+        List<Appointment> booked = new ArrayList<>();
+        for (String username : storage.getUsernames(true)) {
+            booked.addAll(storage.getAppointments(username, true, null, null, null, Integer.MAX_VALUE));
+        }
+        check("every cancel found its appointment", second.stream().limit(canceled).filter(a -> a != null).count(),
+                (long) canceled);
+        long rebooked = second.stream().skip(canceled).filter(a -> a.getStatus() == Appointment.Status.BOOKED).count();
+        check("appointments left", (long) booked.size(), first.size() - canceled + rebooked);
+        check("doses left", storage.getVaccines().get(VACCINE), 1_000 - booked.size());
+        checkNoDoubleBookings(booked);
+    }
+
+    private static InMemoryStorage storage(int caregivers, int days, int doses) throws SQLException {
+        InMemoryStorage storage = new InMemoryStorage();
+        List<Date> dates = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            dates.add(Date.valueOf(FIRST_DAY.plusDays(day)));
+        }
+        for (int i = 0; i < caregivers; i++) {
+            String username = "caregiver" + i;
+            storage.saveCaregiver(new Caregiver.CaregiverBuilder(username, new byte[0], new byte[0], "").build());
+            storage.addAvailability(username, dates, Slot.ALL);
+        }
+        storage.addDoses(Map.of(VACCINE, doses));
+        return storage;
+    }
+
+    // Every patient asks for each day three times at once, twice for the earliest free slot and once for a
+    // slot of its own, and returns the appointments that were booked
+    private static List<Appointment> reserveConcurrently(InMemoryStorage storage, int patients, int days)
+            throws Exception {
+        List<Callable<Appointment>> tasks = new ArrayList<>();
+        for (int p = 0; p < patients; p++) {
+            for (int day = 0; day < days; day++) {
+                tasks.add(reserveTask(storage, "patient" + p, day, -1));
+                tasks.add(reserveTask(storage, "patient" + p, day, -1));
+                tasks.add(reserveTask(storage, "patient" + p, day, p % Slot.PER_DAY));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Appointment> booked = new ArrayList<>();
+        for (Appointment appointment : runAll(pool, tasks)) {
+            if (appointment.getStatus() == Appointment.Status.BOOKED) {
+                booked.add(appointment);
+            }
+        }
+        pool.shutdown();
+        return booked;
+    }
+
+    private static Callable<Appointment> reserveTask(InMemoryStorage storage, String patient, int day, int slot) {
+        return () -> storage.reserve(patient, VACCINE, Date.valueOf(FIRST_DAY.plusDays(day)), slot);
+    }
+
+    // Starts all the tasks together and returns their results in task order
+    private static List<Appointment> runAll(ExecutorService pool, List<Callable<Appointment>> tasks)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Appointment>> futures = new ArrayList<>();
+        for (Callable<Appointment> task : tasks) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        List<Appointment> results = new ArrayList<>();
+        for (Future<Appointment> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static void checkNoDoubleBookings(List<Appointment> booked) {
+        Set<String> caregiverSlots = new HashSet<>();
+        Set<String> patientDays = new HashSet<>();
+        Set<Integer> aids = new HashSet<>();
+        for (Appointment appointment : booked) {
+            String day = appointment.getTime().toString();
+            check("caregiver slot booked once: " + appointment.getCaregiver() + " " + day + " " +
+                    appointment.getSlot(), caregiverSlots.add(appointment.getCaregiver() + " " + day + " " +
+                    appointment.getSlot()), true);
+            check("patient booked once a day: " + appointment.getPatient() + " " + day,
+                    patientDays.add(appointment.getPatient() + " " + day), true);
+            check("AID used once: " + appointment.getAid(), aids.add(appointment.getAid()), true);
+        }
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}